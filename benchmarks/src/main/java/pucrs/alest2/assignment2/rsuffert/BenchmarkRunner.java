@@ -0,0 +1,42 @@
+package pucrs.alest2.assignment2.rsuffert;
+
+import java.io.IOException;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * The {@link BenchmarkRunner} class is the entry point of the benchmarks jar. It accepts the same command-line options as the JMH runner
+ * and always enables the {@link GCProfiler}, so every result comes with the allocation rate ({@code gc.alloc.rate.norm}, in bytes per
+ * operation) next to the time.
+ * @author Ricardo Süffert
+ */
+public class BenchmarkRunner {
+    /**
+     * Runs the benchmarks selected by the given JMH command-line options (all of them, by default), or lists them with {@code -l}.
+     * @param args the JMH command-line options; invalid options make the program exit with status 1
+     * @throws RunnerException if the benchmarks could not be run
+     * @throws IOException if the list of benchmarks could not be read
+     */
+    public static void main(String[] args) throws RunnerException, IOException {
+        CommandLineOptions cli;
+        try {
+            cli = new CommandLineOptions(args);
+        } catch (CommandLineOptionException e) {
+            System.err.println("Opções inválidas: " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+        if (cli.shouldHelp()) {
+            cli.showHelp();
+            return;
+        }
+
+        Runner runner = new Runner(new OptionsBuilder().parent(cli).addProfiler(GCProfiler.class).build());
+        if (cli.shouldList()) runner.list();
+        else                  runner.run();
+    }
+}
@@ -0,0 +1,47 @@
+package pucrs.alest2.assignment2.rsuffert;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * The {@link CorpusMap} class is the JMH state shared by the benchmarks: one of the maps of the {@code test_cases} directory, together
+ * with its graph, which is loaded once per trial. The directory is taken from the {@code maps.dir} system property, or found relative to
+ * the working directory (either the root of the repository or the {@code benchmarks} directory).
+ * @author Ricardo Süffert
+ */
+@State(Scope.Benchmark)
+public class CorpusMap {
+    @Param({"case0", "case1", "case2", "case3", "case4", "case5"})
+    public String map; // name of the map file, without the extension
+
+    Path path; // path to the map file
+    Graph graph; // graph of the map
+    int firstPort; // code of the vertex of the first port
+    int lastPort; // code of the vertex of the port with the highest number
+
+    @Setup(Level.Trial)
+    public void load() throws IOException {
+        path = directory().resolve(map + ".map");
+        graph = new Graph(path.toString());
+        firstPort = graph.translatePortToCode(1);
+        lastPort  = graph.translatePortToCode(graph.getPortsCount());
+    }
+
+    // returns the directory that contains the maps
+    private static Path directory() throws IOException {
+        String property = System.getProperty("maps.dir");
+        if (property != null) return Paths.get(property);
+        for (String candidate : new String[] {"test_cases", "../test_cases"}) {
+            Path directory = Paths.get(candidate);
+            if (Files.isDirectory(directory)) return directory;
+        }
+        throw new IOException("Diretório test_cases não encontrado; defina -Dmaps.dir");
+    }
+}
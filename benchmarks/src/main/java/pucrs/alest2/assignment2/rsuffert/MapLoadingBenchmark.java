@@ -0,0 +1,66 @@
+package pucrs.alest2.assignment2.rsuffert;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The {@link MapLoadingBenchmark} class measures how long it takes to turn a map file into a {@link Graph}: the parsing alone, the
+ * whole construction of the graph, its construction from an up-to-date snapshot and a walk over all of its edges (the adjacency lists
+ * are no longer materialized, so this is the cost that building them used to stand for).
+ * @author Ricardo Süffert
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MapLoadingBenchmark {
+    /**
+     * The snapshot of the map, which is written (next to the map file) once per trial.
+     */
+    @State(Scope.Benchmark)
+    public static class Snapshot {
+        @Setup(Level.Trial)
+        public void write(CorpusMap corpus) throws IOException {
+            corpus.graph.writeSnapshot(true);
+        }
+    }
+
+    @Benchmark
+    public MapFileParser parse(CorpusMap corpus) throws IOException {
+        return new MapFileParser(corpus.path);
+    }
+
+    @Benchmark
+    public Graph load(CorpusMap corpus) throws IOException {
+        return new Graph(corpus.path.toString());
+    }
+
+    @Benchmark
+    public Graph loadSnapshot(CorpusMap corpus, Snapshot snapshot) throws IOException {
+        return Graph.load(corpus.path.toString());
+    }
+
+    @Benchmark
+    public long neighbours(CorpusMap corpus) {
+        Graph g = corpus.graph;
+        int[] adjacent = new int[4];
+        long sum = 0;
+        for (int v=0; v<g.getVertexCount(); v++) {
+            int adjacentCount = g.neighbours(v, adjacent);
+            for (int i=0; i<adjacentCount; i++) sum += adjacent[i];
+        }
+        return sum;
+    }
+}
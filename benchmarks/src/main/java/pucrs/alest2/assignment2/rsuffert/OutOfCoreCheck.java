@@ -0,0 +1,108 @@
+package pucrs.alest2.assignment2.rsuffert;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+
+/**
+ * The {@link OutOfCoreCheck} class compares the distances between the ports computed out of core by {@link ExternalPortDistances} with
+ * those computed in memory by {@link Graph#getPortDistances()}, on the maps of the {@code test_cases} directory and on random maps of
+ * every shape from a single row or column up, and exits with status 1 if any pair of ports differs. It is run from the benchmarks jar:
+ * {@code java -cp benchmarks/target/benchmarks.jar pucrs.alest2.assignment2.rsuffert.OutOfCoreCheck [count] [seed]}.
+ * @author Ricardo Süffert
+ */
+public class OutOfCoreCheck {
+    private static final int MAX_PORTS = 10; // ports are single digits
+
+    /**
+     * Compares the distances of the maps of the {@code test_cases} directory (found like {@link CorpusMap} does) and of a number of
+     * random maps.
+     * @param args the number of random maps (by default, 500) and the seed of their generator (by default, 1)
+     * @throws IOException if a map could not be read or written
+     */
+    public static void main(String[] args) throws IOException {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 1;
+        Path directory = Files.createTempDirectory("out-of-core-check");
+        int mismatches = 0, maps = 0;
+        try {
+            Path corpus = Paths.get(System.getProperty("maps.dir", "test_cases"));
+            if (!Files.isDirectory(corpus)) corpus = Paths.get("..", "test_cases"); // run from the benchmarks directory
+            if (Files.isDirectory(corpus)) {
+                try (DirectoryStream<Path> files = Files.newDirectoryStream(corpus, "*.map")) {
+                    for (Path map : files) {
+                        mismatches += compare(map, directory);
+                        maps++;
+                    }
+                }
+            }
+            Random random = new Random(seed);
+            Path map = directory.resolve("random.map");
+            for (int i=0; i<count; i++) {
+                write(map, random);
+                mismatches += compare(map, directory);
+                maps++;
+            }
+        } finally {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+                for (Path file : files) Files.delete(file);
+            }
+            Files.delete(directory);
+        }
+        System.out.printf("%d mapas comparados, %d diferenças%n", maps, mismatches);
+        if (mismatches > 0) System.exit(1);
+    }
+
+    // compares the distances of the ports of a map, returning the number of pairs that differ (maps rejected in memory are skipped)
+    private static int compare(Path map, Path workDirectory) throws IOException {
+        Graph g;
+        try {
+            g = new Graph(map.toString());
+        } catch (MapFormatException e) {
+            return 0;
+        }
+        PortDistances memory = g.getPortDistances();
+        PortDistances external = new ExternalPortDistances(map, ExternalPortDistances.MIN_HEAP_BUDGET, workDirectory,
+                                                           Instrumentation.DISABLED);
+        int mismatches = 0;
+        for (int p=0; p<MAX_PORTS; p++) {
+            if (g.translatePortToCode(p) == null) continue;
+            for (int q=0; q<MAX_PORTS; q++) {
+                if (g.translatePortToCode(q) == null) continue;
+                int expected = memory.distance(p, q), actual = external.distance(p, q);
+                if (expected == actual) continue;
+                if (mismatches++ == 0) System.out.println(map + ":");
+                System.out.printf("  %d -> %d: em memória %d, fora da memória %d%n", p, q, expected, actual);
+            }
+        }
+        if (mismatches > 0 && map.getFileName().toString().equals("random.map")) System.out.print(Files.readString(map));
+        return mismatches;
+    }
+
+    // writes a random map of up to 40 lines and 40 columns, with about a third of obstacles and up to ten ports
+    private static void write(Path map, Random random) throws IOException {
+        int lines = 1 + random.nextInt(40), columns = 1 + random.nextInt(40);
+        if (random.nextInt(4) == 0) columns = 1; // the shapes in which the offsets of the rows and of the columns coincide
+        else if (random.nextInt(4) == 0) lines = 1;
+        char[] cells = new char[lines * columns];
+        for (int v=0; v<cells.length; v++) cells[v] = random.nextInt(3) == 0 ? '*' : '.';
+        int ports = 1 + random.nextInt(Math.min(MAX_PORTS, cells.length));
+        for (int p=0; p<ports; p++) {
+            int v;
+            do v = random.nextInt(cells.length); while (Character.isDigit(cells[v]));
+            cells[v] = (char) ('0' + p);
+        }
+        try (Writer out = Files.newBufferedWriter(map, StandardCharsets.US_ASCII)) {
+            out.write(lines + " " + columns + "\n");
+            for (int r=0; r<lines; r++) {
+                out.write(cells, r * columns, columns);
+                out.write('\n');
+            }
+        }
+    }
+}
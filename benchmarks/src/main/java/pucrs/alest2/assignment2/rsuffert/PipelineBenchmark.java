@@ -0,0 +1,35 @@
+package pucrs.alest2.assignment2.rsuffert;
+
+import java.io.IOException;
+import java.security.InvalidAlgorithmParameterException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The {@link PipelineBenchmark} class measures the solution of the Phoenician problem as {@link App} computes it: the voyage to the
+ * last port and back on an already loaded map, and the whole pipeline from the map file to the fuel, which is what the time shown by
+ * the program covers.
+ * @author Ricardo Süffert
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PipelineBenchmark {
+    @Benchmark
+    public int voyage(CorpusMap corpus) throws InvalidAlgorithmParameterException {
+        return new Voyage(corpus.graph).getFuel();
+    }
+
+    @Benchmark
+    public int fromFile(CorpusMap corpus) throws IOException, InvalidAlgorithmParameterException {
+        return new Voyage(new Graph(corpus.path.toString())).getFuel();
+    }
+}
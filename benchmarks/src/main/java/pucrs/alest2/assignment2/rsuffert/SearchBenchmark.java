@@ -0,0 +1,68 @@
+package pucrs.alest2.assignment2.rsuffert;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The {@link SearchBenchmark} class measures the searches on an already loaded map: a full {@link BreadthFirstSearch} from the first
+ * port (including its construction), a full search of the reusable {@link BreadthFirstSearchEngine}, a point-to-point query from the
+ * first to the last port for each {@link SearchAlgorithm} and the computation of the whole {@link PortDistanceMatrix}.
+ * @author Ricardo Süffert
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchBenchmark {
+    /**
+     * The engines of a map, which are allocated once per trial and reused by every operation, as the program does.
+     */
+    @State(Scope.Thread)
+    public static class Engines {
+        @Param({"BREADTH_FIRST", "BIDIRECTIONAL_BREADTH_FIRST", "BIT_PARALLEL_BREADTH_FIRST", "A_STAR", "JUMP_POINT", "HIERARCHICAL",
+                "DIAL"})
+        public SearchAlgorithm algorithm; // algorithm of the point-to-point query
+
+        BreadthFirstSearchEngine engine; // engine of the full searches
+        PointToPointSearch search; // engine of the point-to-point query
+
+        @Setup(Level.Trial)
+        public void allocate(CorpusMap corpus) {
+            engine = new BreadthFirstSearchEngine(corpus.graph);
+            search = algorithm.create(corpus.graph);
+        }
+    }
+
+    @Benchmark
+    public BreadthFirstSearch breadthFirstSearch(CorpusMap corpus) {
+        return new BreadthFirstSearch(corpus.graph, corpus.firstPort);
+    }
+
+    @Benchmark
+    public BreadthFirstSearchEngine engineSearch(CorpusMap corpus, Engines engines) {
+        engines.engine.search(corpus.firstPort);
+        return engines.engine;
+    }
+
+    @Benchmark
+    public int pointToPoint(CorpusMap corpus, Engines engines) {
+        return engines.search.distance(corpus.firstPort, corpus.lastPort);
+    }
+
+    @Benchmark
+    public PortDistanceMatrix portDistanceMatrix(CorpusMap corpus) {
+        return new PortDistanceMatrix(corpus.graph);
+    }
+}
@@ -0,0 +1,94 @@
+package pucrs.alest2.assignment2.rsuffert;
+
+import java.util.Arrays;
+
+/**
+ * The {@link AStarSearch} class implements the A* algorithm for the grid maps of the Phoenician problem. Every movement costs the same
+ * and only the four orthogonal movements are allowed, so the Manhattan distance between two cells never overestimates the length of the
+ * shortest path between them and is used as the heuristic: the search expands the vertices whose distance from the source plus the
+ * Manhattan distance to the target is the smallest, and returns the same distances as a breadth-first search while expanding fewer
+ * vertices when the target is not behind obstacles.
+ * <p>
+ * Like {@link BreadthFirstSearchEngine}, an instance is meant to be allocated once per {@link Graph} and reused: its arrays are stamped
+ * with the number of the current search instead of being cleared. Instances of this class are not thread-safe.
+ * @author Ricardo Süffert
+ */
+public class AStarSearch implements PointToPointSearch {
+    private final Graph g; // the base graph
+    private final int columns; // number of columns in the map
+    private final int[] seenIn; // stores the epoch of the last search that reached the vertex represented by the index in the array
+    private final int[] closedIn; // stores the epoch of the last search that expanded the vertex represented by the index in the array
+    private final int[] distTo; // stores the best known distance from the source to the vertex represented by the index in the array
+    private final IntMinHeap open; // vertices to be expanded, ordered by their priority
+    private final int[] adjacent = new int[4]; // buffer for the vertices adjacent to a vertex (at most four in a grid)
+    private int epoch; // number of the current search
+
+    /**
+     * Constructs an A* search for a given graph.
+     * @param g the base graph
+     */
+    public AStarSearch(Graph g) {
+        this.g        = g;
+        this.columns  = g.getColumns();
+        this.seenIn   = new int[g.getVertexCount()];
+        this.closedIn = new int[g.getVertexCount()];
+        this.distTo   = new int[g.getVertexCount()];
+        this.open     = new IntMinHeap(1024);
+    }
+
+    /**
+     * Returns the length of the shortest path from a source vertex to a target vertex.
+     * @param s the source vertex
+     * @param t the target vertex
+     * @return the distance from {@code s} to {@code t}, or {@link #UNREACHABLE} if there isn't a path from {@code s} to {@code t}
+     */
+    @Override
+    public int distance(int s, int t) {
+        if (s == t) return 0;
+        if (++epoch == Integer.MAX_VALUE) { // the stamps would become ambiguous, so clear them
+            Arrays.fill(seenIn, 0);
+            Arrays.fill(closedIn, 0);
+            epoch = 1;
+        }
+        int targetRow    = t / columns;
+        int targetColumn = t % columns;
+
+        open.clear();
+        seenIn[s] = epoch;
+        distTo[s] = 0;
+        open.push(priority(0, manhattan(s, targetRow, targetColumn)), s);
+        while (!open.isEmpty()) {
+            int v = open.pop();
+            if (closedIn[v] == epoch) continue; // outdated entry of a vertex that has already been expanded
+            closedIn[v] = epoch;
+            if (v == t) return distTo[v]; // the heuristic is consistent, so the distance of an expanded vertex is final
+
+            int adjacentCount = g.neighbours(v, adjacent);
+            for (int i=0; i<adjacentCount; i++) {
+                int w = adjacent[i];
+                int distance = distTo[v] + 1;
+                if (seenIn[w] != epoch || distance < distTo[w]) {
+                    seenIn[w] = epoch;
+                    distTo[w] = distance;
+                    open.push(priority(distance, manhattan(w, targetRow, targetColumn)), w);
+                }
+            }
+        }
+        return UNREACHABLE;
+    }
+
+    /**
+     * Returns the priority of a vertex in the open list: the vertices with the smallest estimated path length come first and, among
+     * those, the ones that are farther from the source (closer to the target), which keeps the search from expanding all the vertices
+     * whose estimates are tied in open water.
+     * @param distance the distance from the source to the vertex
+     * @param estimate the estimated distance from the vertex to the target
+     * @return the key of the vertex in the open list
+     */
+    static long priority(int distance, int estimate) { return ((long) (distance + estimate) << 32) - distance; }
+
+    // returns the Manhattan distance from a vertex to the target cell
+    private int manhattan(int v, int targetRow, int targetColumn) {
+        return Math.abs(v / columns - targetRow) + Math.abs(v % columns - targetColumn);
+    }
+}
@@ -0,0 +1,358 @@
+package pucrs.alest2.assignment2.rsuffert;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * The {@link BatchRunner} class implements the headless mode of the program, which solves many maps in a single run of the JVM. Each map
+ * is solved by its own task, with no state shared between tasks, and one line is printed per map, in the order the maps were given:
+ * <pre>
+ * path	fuel=N	lastPort=N	inaccessible=N,N|-	timeMs=N.N
+ * path	error=message
+ * </pre>
+ * The tasks run on virtual threads when the JVM supports them (Java 21 or newer) and on a fixed pool of platform threads otherwise. In
+ * both cases, at most {@code parallelism} maps are loaded at the same time, which bounds the memory used by the run. With
+ * {@code --snapshots}, the maps are loaded with {@link Graph#load(String)}, and a snapshot (including the distances between the ports) is
+ * written for every map that had to be parsed, so the next runs skip the parsing and the searches; the snapshot of a run with
+ * non-uniform costs holds no distances, and is written again by the next run with uniform costs. With {@code --metrics FILE} (which
+ * requires the {@link Instrumentation} to be turned on), the metrics of all the maps are written to {@code FILE} as a JSON array. With
+ * {@code --heap-budget MB}, the maps are solved out of core by {@link ExternalPortDistances}, each within {@code MB} mebibytes of heap
+ * space, for maps too large to be loaded into a {@link Graph}; the budget is per map, so the run may use {@code parallelism} times as
+ * much. Snapshots are not used in this mode. With {@code --routes DIRECTORY}, the map of each voyage is also written to
+ * {@code DIRECTORY/<map file>.route}, with its {@link Route} drawn over it by a {@link RouteOverlayWriter} (this needs the map in memory,
+ * so it is not available out of core). With {@code --costs SPEC}, the maps are loaded with the given {@link TerrainCosts} (such as
+ * {@code ~=3,:=2}), and the fuel is the cost of the voyage; since the routes and the out-of-core solution count moves, neither is
+ * available with costs.
+ * @author Ricardo Süffert
+ */
+public class BatchRunner {
+    private final int parallelism; // maximum number of maps being solved at the same time
+    private final boolean snapshots; // whether or not the maps are loaded from (and saved to) snapshots
+    private final Path metricsFile; // where the metrics of the maps are written, or null if they are not wanted
+    private final long heapBudget; // heap space, in bytes, of the out-of-core solution of each map, or 0 if the maps are loaded
+    private final Path routesDirectory; // where the maps with the routes drawn over them are written, or null if they are not wanted
+    private final TerrainCosts costs; // the cost of moving into each kind of cell of the maps
+    private final PrintStream out; // where the result lines are printed
+
+    /**
+     * Constructs a batch runner.
+     * @param options the options of the run, which are validated and copied (later changes to them do not affect the runner)
+     * @param out where the result lines are printed
+     * @throws IllegalArgumentException if the options are invalid or cannot be used together (see {@link Options#validate()})
+     */
+    public BatchRunner(Options options, PrintStream out) {
+        options.validate();
+        this.parallelism     = options.parallelism;
+        this.snapshots       = options.snapshots;
+        this.metricsFile     = options.metricsFile;
+        this.heapBudget      = options.heapBudget;
+        this.routesDirectory = options.routesDirectory;
+        this.costs           = options.costs;
+        this.out             = out;
+    }
+
+    /**
+     * Runs the headless mode with the given command-line arguments: the {@code .map} files and directories of {@code .map} files to be
+     * solved, optionally preceded by {@code --parallelism N}, {@code --snapshots}, {@code --metrics FILE}, {@code --heap-budget MB},
+     * {@code --routes DIRECTORY} and {@code --costs SPEC}.
+     * @param args the command-line arguments
+     * @return the exit status of the program: 0 if all maps were solved, 1 if any of them failed, 2 if the arguments are invalid
+     */
+    public static int run(String[] args) {
+        Options options = new Options();
+        List<String> inputs = new ArrayList<>();
+        try {
+            for (int i=0; i<args.length; i++) {
+                if (args[i].equals("--snapshots"))                              options.snapshots(true);
+                else if (args[i].equals("--metrics") && i+1 < args.length)     options.metricsFile(Paths.get(args[++i]));
+                else if (args[i].equals("--routes") && i+1 < args.length)      options.routesDirectory(Paths.get(args[++i]));
+                else if (args[i].equals("--costs") && i+1 < args.length)       options.costs(TerrainCosts.parse(args[++i]));
+                else if (args[i].equals("--heap-budget") && i+1 < args.length) {
+                    long megabytes = parseNumber(args[++i], "Orçamento de memória inválido: ");
+                    if (megabytes < 1) throw new IllegalArgumentException("O orçamento de memória deve ser de pelo menos 1 MB");
+                    options.heapBudget(megabytes << 20);
+                }
+                else if (args[i].equals("--parallelism") && i+1 < args.length)
+                    options.parallelism((int) parseNumber(args[++i], "Paralelismo inválido: "));
+                else inputs.add(args[i]);
+            }
+        } catch (IllegalArgumentException e) { // also InvalidPathException
+            System.err.println(e.getMessage());
+            return 2;
+        }
+
+        List<Path> maps;
+        try {
+            maps = collectMaps(inputs);
+        } catch (IOException e) {
+            System.err.println("Não foi possível listar os mapas: " + e.getMessage());
+            return 2;
+        }
+        if (maps.isEmpty()) {
+            System.err.println("Uso: App [--parallelism N] [--snapshots] [--metrics arquivo.json] [--heap-budget MB] "
+                               + "[--routes diretório] [--costs caractere=custo,...] <arquivo.map | diretório>...");
+            return 2;
+        }
+        BatchRunner runner;
+        try {
+            runner = new BatchRunner(options, System.out);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            return 2;
+        }
+        return runner.solveAll(maps) ? 0 : 1;
+    }
+
+    // parses a number given on the command line, with the message of the error if it is not one
+    private static long parseNumber(String argument, String error) {
+        try {
+            return Long.parseLong(argument);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(error + argument);
+        }
+    }
+
+    /**
+     * Expands the given inputs into a list of map files: files are kept as they are and directories are replaced by the {@code .map}
+     * files inside them, sorted by name.
+     * @param inputs the paths of map files and directories
+     * @return the map files
+     * @throws IOException if a directory could not be listed
+     */
+    static List<Path> collectMaps(List<String> inputs) throws IOException {
+        List<Path> maps = new ArrayList<>();
+        for (String input : inputs) {
+            Path path = Paths.get(input);
+            if (!Files.isDirectory(path)) {
+                maps.add(path);
+                continue;
+            }
+            List<Path> inDirectory = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(path, "*.map")) {
+                for (Path map : stream) inDirectory.add(map);
+            }
+            Collections.sort(inDirectory);
+            maps.addAll(inDirectory);
+        }
+        return maps;
+    }
+
+    /**
+     * Solves the given maps concurrently, printing one line per map in the given order (and writing their metrics, if they are wanted).
+     * @param maps the map files
+     * @return {@code true} if all maps were solved and their metrics were written; {@code false} if any of them failed
+     */
+    public boolean solveAll(List<Path> maps) {
+        Semaphore permits = new Semaphore(parallelism);
+        boolean allSolved = true;
+        List<Instrumentation> metrics = new ArrayList<>(maps.size());
+        ExecutorService executor = newExecutor(parallelism);
+        try {
+            List<Future<String>> results = new ArrayList<>(maps.size());
+            for (Path map : maps) {
+                Instrumentation mapMetrics = metricsFile != null ? Instrumentation.forMap(map.toString()) : Instrumentation.DISABLED;
+                metrics.add(mapMetrics);
+                results.add(executor.submit(() -> {
+                    permits.acquire();
+                    try {
+                        return solve(map, mapMetrics);
+                    } finally {
+                        permits.release();
+                    }
+                }));
+            }
+            for (int i=0; i<results.size(); i++) {
+                String line;
+                try {
+                    line = results.get(i).get();
+                } catch (ExecutionException e) {
+                    line = maps.get(i) + "\terror=" + e.getCause();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+                if (line.contains("\terror=")) allSolved = false;
+                out.println(line);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        if (metricsFile != null) {
+            List<String> objects = new ArrayList<>(metrics.size());
+            for (Instrumentation mapMetrics : metrics) objects.add(mapMetrics.toJson());
+            try {
+                Files.writeString(metricsFile, "[" + String.join(",\n ", objects) + "]\n");
+            } catch (IOException e) {
+                System.err.println("Não foi possível escrever as métricas: " + e.getMessage());
+                return false;
+            }
+        }
+        return allSolved;
+    }
+
+    /**
+     * Solves a single map with the options of this runner.
+     * @param map the map file
+     * @param metrics where the metrics of the map are recorded
+     * @return the result line of the map
+     */
+    private String solve(Path map, Instrumentation metrics) {
+        long initialTime = System.nanoTime();
+        try {
+            Voyage voyage;
+            if (heapBudget != 0) {
+                Path workDirectory = map.toAbsolutePath().getParent();
+                voyage = new Voyage(new ExternalPortDistances(map, heapBudget, workDirectory, metrics), metrics);
+            } else {
+                Graph mapGraph;
+                if (snapshots) mapGraph = Graph.load(map.toString(), costs, metrics);
+                else {
+                    long start = metrics.start();
+                    mapGraph = new Graph(map.toString(), costs);
+                    metrics.stop("parse", start);
+                }
+                voyage = new Voyage(mapGraph, metrics);
+                // a snapshot written by a run with other costs lacks the distances, which this run has just computed if they are uniform
+                if (snapshots && (!mapGraph.isLoadedFromSnapshot() || costs.isUniform() && !mapGraph.isLoadedWithSnapshotDistances()))
+                    mapGraph.writeSnapshot(true);
+                if (routesDirectory != null) {
+                    Path routeFile = routesDirectory.resolve(map.getFileName() + ".route");
+                    new RouteOverlayWriter(mapGraph).write(new Route(mapGraph, voyage), routeFile);
+                }
+            }
+            String inaccessible = voyage.describeInaccessiblePorts();
+            return String.format(Locale.ROOT, "%s\tfuel=%d\tlastPort=%d\tinaccessible=%s\ttimeMs=%.1f",
+                                 map, voyage.getFuel(), voyage.getLastPortVisited(),
+                                 inaccessible == null ? "-" : inaccessible.replace(", ", ","),
+                                 (System.nanoTime() - initialTime) / 1e6);
+        } catch (Exception e) {
+            return String.format("%s\terror=%s", map, e.getMessage() == null ? e.toString() : e.getMessage());
+        }
+    }
+
+    /**
+     * Creates an executor that runs each task on its own virtual thread if the JVM supports them, or on a fixed pool of platform threads.
+     * @param platformThreads the number of platform threads of the pool, if virtual threads are not supported
+     * @return the executor
+     */
+    static ExecutorService newExecutor(int platformThreads) {
+        try { // Executors.newVirtualThreadPerTaskExecutor() only exists from Java 21 on
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(platformThreads);
+        }
+    }
+
+    /**
+     * The options of a {@link BatchRunner}, which are set one by one (each setter returns the options themselves, so the calls can be
+     * chained) and validated together when the runner is constructed. Every option is off by default, except the parallelism, which is
+     * the number of available processors.
+     */
+    public static class Options {
+        private int parallelism = Runtime.getRuntime().availableProcessors(); // maximum number of maps being solved at the same time
+        private boolean snapshots; // whether or not the maps are loaded from (and saved to) snapshots
+        private Path metricsFile; // where the metrics of the maps are written, or null if they are not wanted
+        private long heapBudget; // heap space, in bytes, of the out-of-core solution of each map, or 0 if the maps are loaded
+        private Path routesDirectory; // where the maps with the routes drawn over them are written, or null if they are not wanted
+        private TerrainCosts costs = TerrainCosts.UNIFORM; // the cost of moving into each kind of cell of the maps
+
+        /**
+         * Sets the maximum number of maps being solved at the same time ({@code --parallelism N}).
+         * @param parallelism the maximum number of maps being solved at the same time
+         * @return these options
+         */
+        public Options parallelism(int parallelism) {
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        /**
+         * Sets whether or not the maps are loaded from their snapshots, which are written when missing or stale ({@code --snapshots}).
+         * @param snapshots whether or not the snapshots are used
+         * @return these options
+         */
+        public Options snapshots(boolean snapshots) {
+            this.snapshots = snapshots;
+            return this;
+        }
+
+        /**
+         * Sets where the metrics of the maps are written as a JSON array ({@code --metrics FILE}), which requires the
+         * {@link Instrumentation} to be turned on.
+         * @param metricsFile the file of the metrics, or {@code null} if they are not wanted
+         * @return these options
+         */
+        public Options metricsFile(Path metricsFile) {
+            this.metricsFile = metricsFile;
+            return this;
+        }
+
+        /**
+         * Sets the heap space of the out-of-core solution of each map ({@code --heap-budget MB}; see {@link ExternalPortDistances}).
+         * @param heapBudget the heap space, in bytes, or 0 to load the maps into memory
+         * @return these options
+         */
+        public Options heapBudget(long heapBudget) {
+            this.heapBudget = heapBudget;
+            return this;
+        }
+
+        /**
+         * Sets where the maps with the routes drawn over them are written ({@code --routes DIRECTORY}).
+         * @param routesDirectory the existing directory of the routes, or {@code null} if they are not wanted
+         * @return these options
+         */
+        public Options routesDirectory(Path routesDirectory) {
+            this.routesDirectory = routesDirectory;
+            return this;
+        }
+
+        /**
+         * Sets the cost of moving into each kind of cell of the maps ({@code --costs SPEC}).
+         * @param costs the terrain costs
+         * @return these options
+         */
+        public Options costs(TerrainCosts costs) {
+            this.costs = costs;
+            return this;
+        }
+
+        /**
+         * Checks that each option is valid and that the options that are set can be used together: the out-of-core solution does not
+         * use snapshots and draws no routes, and neither it nor the routes take terrain costs.
+         * @throws IllegalArgumentException if an option is invalid or two options cannot be used together, with the message shown by
+         *                                  the headless mode
+         */
+        void validate() {
+            if (parallelism < 1) throw new IllegalArgumentException("O paralelismo deve ser positivo");
+            if (costs == null) throw new IllegalArgumentException("Os custos do terreno são obrigatórios");
+            if (metricsFile != null && !Instrumentation.ENABLED)
+                throw new IllegalArgumentException("A instrumentação está desativada; execute com -Dphoenician.instrumentation=true");
+            if (heapBudget != 0 && heapBudget < ExternalPortDistances.MIN_HEAP_BUDGET)
+                throw new IllegalArgumentException("O orçamento de memória deve ser de pelo menos 1 MB");
+            if (snapshots && heapBudget != 0)
+                throw new IllegalArgumentException("As opções --snapshots e --heap-budget não podem ser usadas juntas");
+            if (routesDirectory != null && heapBudget != 0)
+                throw new IllegalArgumentException("As opções --routes e --heap-budget não podem ser usadas juntas");
+            if (!costs.isUniform() && heapBudget != 0)
+                throw new IllegalArgumentException("As opções --costs e --heap-budget não podem ser usadas juntas");
+            if (!costs.isUniform() && routesDirectory != null)
+                throw new IllegalArgumentException("As opções --costs e --routes não podem ser usadas juntas");
+            if (routesDirectory != null && !Files.isDirectory(routesDirectory))
+                throw new IllegalArgumentException("O diretório das rotas não existe: " + routesDirectory);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package pucrs.alest2.assignment2.rsuffert;
+
+import java.util.Arrays;
+
+/**
+ * The {@link BidirectionalBreadthFirstSearch} class implements a point-to-point breadth-first search that expands from both the source
+ * and the target vertices at the same time, one level at a time, always growing the side whose frontier is smaller. The search stops
+ * once the two sides meet, so it visits roughly the vertices within half the distance of each end instead of all the vertices within the
+ * whole distance of the source.
+ * <p>
+ * Like {@link BreadthFirstSearchEngine}, an instance is meant to be allocated once per {@link Graph} and reused: the visited arrays are
+ * stamped with the number of the current search instead of being cleared, and the queues are primitive {@code int} arrays. Instances of
+ * this class are not thread-safe.
+ * @author Ricardo Süffert
+ */
+public class BidirectionalBreadthFirstSearch implements PointToPointSearch {
+    private final Graph g; // the base graph
+    private final int[] visitedFromSource; // stores the epoch of the last search in which the source side visited the vertex
+    private final int[] visitedFromTarget; // stores the epoch of the last search in which the target side visited the vertex
+    private final int[] distFromSource; // stores the distance from the source to the vertex represented by the index in the array
+    private final int[] distFromTarget; // stores the distance from the target to the vertex represented by the index in the array
+    private final int[] sourceQueue; // vertices of the source side whose adjacents need to be visited
+    private final int[] targetQueue; // vertices of the target side whose adjacents need to be visited
+    private final int[] adjacent = new int[4]; // buffer for the vertices adjacent to a vertex (at most four in a grid)
+    private int epoch; // number of the current search
+
+    /**
+     * Constructs a bidirectional search for a given graph.
+     * @param g the base graph
+     */
+    public BidirectionalBreadthFirstSearch(Graph g) {
+        this.g                 = g;
+        this.visitedFromSource = new int[g.getVertexCount()];
+        this.visitedFromTarget = new int[g.getVertexCount()];
+        this.distFromSource    = new int[g.getVertexCount()];
+        this.distFromTarget    = new int[g.getVertexCount()];
+        this.sourceQueue       = new int[g.getVertexCount()];
+        this.targetQueue       = new int[g.getVertexCount()];
+    }
+
+    /**
+     * Returns the length of the shortest path from a source vertex to a target vertex.
+     * @param s the source vertex
+     * @param t the target vertex
+     * @return the distance from {@code s} to {@code t}, or {@link #UNREACHABLE} if there isn't a path from {@code s} to {@code t}
+     */
+    @Override
+    public int distance(int s, int t) {
+        if (s == t) return 0;
+        if (!g.isNavigable(t)) return UNREACHABLE; // obstacles cannot be entered, although the target side could leave them
+        if (++epoch == Integer.MAX_VALUE) { // the stamps would become ambiguous, so clear them
+            Arrays.fill(visitedFromSource, 0);
+            Arrays.fill(visitedFromTarget, 0);
+            epoch = 1;
+        }
+
+        visitedFromSource[s] = epoch;
+        distFromSource[s] = 0;
+        sourceQueue[0] = s;
+        visitedFromTarget[t] = epoch;
+        distFromTarget[t] = 0;
+        targetQueue[0] = t;
+
+        // each queue only ever receives each vertex once per search, so [head, tail) never wraps around
+        int sourceHead = 0, sourceTail = 1;
+        int targetHead = 0, targetTail = 1;
+        while (sourceHead < sourceTail && targetHead < targetTail) { // while both sides still have vertices to expand
+            int best;
+            if (sourceTail-sourceHead <= targetTail-targetHead) { // grow the side with the smaller frontier by one whole level
+                int levelEnd = sourceTail;
+                best = Integer.MAX_VALUE;
+                for (; sourceHead < levelEnd; sourceHead++) {
+                    int v = sourceQueue[sourceHead];
+                    int adjacentCount = g.neighbours(v, adjacent);
+                    for (int i=0; i<adjacentCount; i++) {
+                        int w = adjacent[i];
+                        if (visitedFromTarget[w] == epoch) best = Math.min(best, distFromSource[v] + 1 + distFromTarget[w]);
+                        if (visitedFromSource[w] != epoch) {
+                            visitedFromSource[w] = epoch;
+                            distFromSource[w] = distFromSource[v] + 1;
+                            sourceQueue[sourceTail++] = w;
+                        }
+                    }
+                }
+            } else {
+                int levelEnd = targetTail;
+                best = Integer.MAX_VALUE;
+                for (; targetHead < levelEnd; targetHead++) {
+                    int v = targetQueue[targetHead];
+                    int adjacentCount = g.neighbours(v, adjacent);
+                    for (int i=0; i<adjacentCount; i++) {
+                        int w = adjacent[i];
+                        if (visitedFromSource[w] == epoch) best = Math.min(best, distFromTarget[v] + 1 + distFromSource[w]);
+                        if (visitedFromTarget[w] != epoch) {
+                            visitedFromTarget[w] = epoch;
+                            distFromTarget[w] = distFromTarget[v] + 1;
+                            targetQueue[targetTail++] = w;
+                        }
+                    }
+                }
+            }
+            // once a whole level has met the other side, the shortest of the meeting paths found in it is the shortest path
+            if (best != Integer.MAX_VALUE) return best;
+        }
+        return UNREACHABLE;
+    }
+}
@@ -0,0 +1,198 @@
+package pucrs.alest2.assignment2.rsuffert;
+
+import java.util.Arrays;
+
+/**
+ * The {@link BitParallelBreadthFirstSearch} class implements the breadth-first search algorithm for the grid maps of the Phoenician
+ * problem by expanding a whole level of the search at once. The navigable cells, the visited cells and the frontier are kept as bitsets
+ * with one row of the map per group of {@code long} words, so the next frontier of each word is computed with a handful of shifts, ORs and
+ * ANDs against the navigable mask, covering 64 cells per operation instead of looking at the neighbours of one vertex at a time.
+ * <p>
+ * It answers the same {@link #hasPathTo(int)} and {@link #distanceTo(int)} queries as {@link BreadthFirstSearch}, and it also implements
+ * {@link PointToPointSearch}, stopping at the level in which the target is reached. Like {@link BreadthFirstSearchEngine}, an instance is
+ * meant to be allocated once per {@link Graph} and reused; it is not thread-safe.
+ * <p>
+ * Only the words of the frontier and their neighbours are examined in each level, so the engine pays off when the frontier runs along
+ * the rows of the map. The frontier of a search that starts at a single cell of open water is a diamond, whose sides are diagonal and
+ * leave only one or two cells in each word; in that case this engine performs about as well as {@link BreadthFirstSearchEngine}.
+ * @author Ricardo Süffert
+ */
+public class BitParallelBreadthFirstSearch implements PointToPointSearch {
+    private final int lines; // number of lines (rows) in the map
+    private final int columns; // number of columns in the map
+    private final int words; // number of long words per row
+    private final long lastWordMask; // bits of the last word of a row that correspond to actual cells
+    private final long[] navigable; // bitset of the cells that are not obstacles
+    private final long[] visited; // bitset of the cells visited by the current search
+    private long[] frontier; // bitset of the cells reached in the last level
+    private long[] next; // bitset of the cells reached in the level being computed
+    private int[] frontierWords; // indices of the words of the frontier that contain at least one cell
+    private int[] nextWords; // indices of the words of the next frontier that contain at least one cell
+    private final int[] examinedIn; // stores the last round in which the word represented by the index in the array was examined
+    private final int[] distTo; // stores the distance from the reference vertex to the vertex represented by the index in the array
+    private int round; // number of the current level, counted across all searches
+    private boolean pointToPoint; // whether or not the last search was a point-to-point one, which does not record the distances
+
+    /**
+     * Constructs a bit-parallel search for a given graph. No search is carried out until {@link #search(int)} is called.
+     * @param g the base graph
+     */
+    public BitParallelBreadthFirstSearch(Graph g) {
+        this.lines        = g.getLines();
+        this.columns      = g.getColumns();
+        this.words        = (columns + 63) >>> 6;
+        this.lastWordMask = (columns & 63) == 0 ? -1L : (1L << (columns & 63)) - 1;
+        this.navigable    = new long[lines * words];
+        this.visited      = new long[lines * words];
+        this.frontier     = new long[lines * words];
+        this.next         = new long[lines * words];
+        this.frontierWords = new int[lines * words];
+        this.nextWords    = new int[lines * words];
+        this.examinedIn   = new int[lines * words];
+        this.distTo       = new int[g.getVertexCount()];
+
+        for (int row=0; row<lines; row++) {
+            for (int column=0; column<columns; column++) {
+                if (g.isNavigable(row*columns + column)) navigable[row*words + (column >>> 6)] |= 1L << (column & 63);
+            }
+        }
+    }
+
+    /**
+     * Carries out the breadth-first search algorithm for a given reference vertex, discarding the results of the previous search.
+     * @param s the reference vertex
+     */
+    public void search(int s) { bfs(s, -1); }
+
+    /**
+     * Returns the length of the shortest path from a source vertex to a target vertex, stopping the search at the level in which the
+     * target is reached. The distances of the other vertices are not recorded, so, after this method returns, only the results of
+     * {@link #hasPathTo(int)} are available (and only for the vertices that were visited before the search stopped), and
+     * {@link #distanceTo(int)} throws an exception until the next call to {@link #search(int)}.
+     * @param s the source vertex (reference vertex of the search)
+     * @param t the target vertex
+     * @return the distance from {@code s} to {@code t}, or {@link #UNREACHABLE} if there isn't a path from {@code s} to {@code t}
+     */
+    @Override
+    public int distance(int s, int t) { return bfs(s, t); }
+
+    /**
+     * Implements the level-synchronous breadth-first search algorithm.
+     * @param s the reference vertex
+     * @param t the target vertex, at which the search stops, or -1 to visit the whole component of {@code s}
+     * @return the distance from {@code s} to {@code t}, or {@link #UNREACHABLE} if {@code t} was not reached
+     */
+    private int bfs(int s, int t) {
+        pointToPoint = t >= 0;
+        Arrays.fill(visited, 0L);
+        int sourceWord = (s / columns)*words + ((s % columns) >>> 6);
+        frontier[sourceWord] = visited[sourceWord] = 1L << ((s % columns) & 63);
+        frontierWords[0] = sourceWord;
+        int frontierCount = 1;
+        distTo[s] = 0;
+
+        int level = 0;
+        int result = s == t ? 0 : UNREACHABLE;
+        int targetWord = t < 0 ? -1 : (t / columns)*words + ((t % columns) >>> 6);
+        long targetMask = t < 0 ? 0 : 1L << ((t % columns) & 63);
+        while (frontierCount > 0 && result == UNREACHABLE) {
+            level++;
+            if (++round == Integer.MAX_VALUE) { // the stamps would become ambiguous, so clear them
+                Arrays.fill(examinedIn, 0);
+                round = 1;
+            }
+            // only the words of the frontier and the words next to them can contain cells of the next level
+            boolean recordDistances = t < 0; // a point-to-point search only needs the level in which the target is reached
+            int nextCount = 0;
+            for (int f=0; f<frontierCount; f++) {
+                int i = frontierWords[f];
+                int w = i % words;
+                nextCount = examine(i, level, recordDistances, nextCount);
+                if (w > 0)                     nextCount = examine(i-1, level, recordDistances, nextCount);
+                if (w < words-1)               nextCount = examine(i+1, level, recordDistances, nextCount);
+                if (i >= words)                nextCount = examine(i-words, level, recordDistances, nextCount);
+                if (i+words < frontier.length) nextCount = examine(i+words, level, recordDistances, nextCount);
+            }
+            // the old frontier becomes the buffer of the next level, which must be empty
+            for (int f=0; f<frontierCount; f++) frontier[frontierWords[f]] = 0L;
+            long[] swap = frontier;
+            frontier = next;
+            next = swap;
+            int[] swapWords = frontierWords;
+            frontierWords = nextWords;
+            nextWords = swapWords;
+            frontierCount = nextCount;
+            if (t >= 0 && (visited[targetWord] & targetMask) != 0) result = level;
+        }
+        // leave the frontier empty for the next search
+        for (int f=0; f<frontierCount; f++) frontier[frontierWords[f]] = 0L;
+        return result;
+    }
+
+    /**
+     * Computes the cells of a word that are discovered in the current level, adding the word to the next frontier if there is any.
+     * @param i the index of the word
+     * @param level the current level (distance of the discovered cells)
+     * @param recordDistances whether or not the distances of the discovered cells must be stored
+     * @param nextCount the number of words in the next frontier
+     * @return the number of words in the next frontier after this word has been examined
+     */
+    private int examine(int i, int level, boolean recordDistances, int nextCount) {
+        if (examinedIn[i] == round) return nextCount;
+        examinedIn[i] = round;
+        long discovered = expand(i) & navigable[i] & ~visited[i];
+        if (discovered == 0) return nextCount;
+
+        next[i] = discovered;
+        visited[i] |= discovered;
+        nextWords[nextCount++] = i;
+        if (recordDistances) {
+            int firstInWord = (i / words)*columns + ((i % words) << 6);
+            for (long bits = discovered; bits != 0; bits &= bits-1) distTo[firstInWord + Long.numberOfTrailingZeros(bits)] = level;
+        }
+        return nextCount;
+    }
+
+    /**
+     * Returns the cells of a word that are adjacent to a cell of the frontier: the frontier shifted one column to the west and to the
+     * east (carrying the bits that cross the boundaries between words) and one row to the north and to the south.
+     * @param i the index of the word
+     * @return the bitset of the cells of the word that are adjacent to the frontier
+     */
+    private long expand(int i) {
+        int w = i % words;
+        long f = frontier[i];
+        long expanded = (f << 1) | (f >>> 1);
+        if (w > 0)                    expanded |= frontier[i-1] >>> 63;
+        if (w < words-1)              expanded |= frontier[i+1] << 63;
+        if (i >= words)               expanded |= frontier[i-words];
+        if (i+words < frontier.length) expanded |= frontier[i+words];
+        return w == words-1 ? expanded & lastWordMask : expanded;
+    }
+
+    // returns whether or not the bit of a vertex is set in a bitset
+    private boolean isSet(long[] bitset, int v) {
+        int column = v % columns;
+        return (bitset[(v / columns)*words + (column >>> 6)] & (1L << (column & 63))) != 0;
+    }
+
+    /**
+     * Returns whether or not a given vertex has a path to the reference vertex of the last search.
+     * @param v the vertex to be found out whether or not it has a path to the reference vertex
+     * @return {@code true} if there is a path leading from {@code v} to the reference vertex; {@code false} if not
+     */
+    public boolean hasPathTo(int v) { return isSet(visited, v); }
+
+    /**
+     * Returns how many vertices apart a given vertex is from the reference vertex of the last search.
+     * @param v the vertex from which it is wished to find out the distance to the reference vertex
+     * @return the distance from {@code v} to the reference vertex, or {@link #UNREACHABLE} if there isn't a path from {@code v} to the
+     *         reference vertex
+     * @throws IllegalStateException if the last search was a point-to-point one ({@link #distance(int, int)}), which does not record
+     *                               the distances
+     */
+    public int distanceTo(int v) {
+        if (pointToPoint) throw new IllegalStateException("the distances are only recorded by search(int)");
+        return hasPathTo(v) ? distTo[v] : UNREACHABLE;
+    }
+}
@@ -34,6 +34,7 @@ public class BreadthFirstSearch {
      */
     private void bfs (Graph g, int s) {
         Queue<Integer> q = new LinkedList<>(); // queue of the vertices whose adjacents need to be visited
+        int[] adjacent = new int[4]; // buffer for the vertices adjacent to the source vertex (at most four in a grid)
 
         q.add(s);
         marked[s] = true;
@@ -42,7 +43,9 @@ public class BreadthFirstSearch {
 
         while (!q.isEmpty()) { // while there are vertices whose adjacent need to be visited
             int source = q.remove(); // get the source node
-            for (int adj : g.adj(source)) { // for each vertex adjacent to source
+            int adjacentCount = g.neighbours(source, adjacent);
+            for (int i=0; i<adjacentCount; i++) { // for each vertex adjacent to source
+                int adj = adjacent[i];
                 if (!marked[adj]) { // if it has not been visited
                     marked[adj] = true;
                     edgeTo[adj] = source;
@@ -0,0 +1,157 @@
+package pucrs.alest2.assignment2.rsuffert;
+
+import java.util.Arrays;
+
+/**
+ * The {@link BreadthFirstSearchEngine} class implements the same breadth-first search algorithm as the {@link BreadthFirstSearch} class,
+ * but it is meant to be allocated once per {@link Graph} and reused for as many searches as needed. Its arrays are never cleared between
+ * searches: each search is assigned a new epoch number, and a vertex only counts as visited if it has been stamped with the current
+ * epoch, which makes starting a new search an O(1) operation. The queue is a primitive {@code int} ring buffer, so a search does not
+ * allocate any memory.
+ * <p>
+ * Besides the full search carried out by {@link #search(int)}, this class also implements the {@link PointToPointSearch} interface:
+ * {@link #distance(int, int)} stops as soon as the target vertex is reached, so its cost is proportional to the region of the graph that
+ * is closer to the source than the target, instead of to the whole component.
+ * <p>
+ * The results of the last search remain available until the next search is started. Instances of this class are not thread-safe.
+ * @author Ricardo Süffert
+ */
+public class BreadthFirstSearchEngine implements PointToPointSearch {
+    private final Graph g; // the base graph
+    private final int[] visitedIn; // stores the epoch of the last search that visited the vertex represented by the index in the array
+    private final int[] edgeTo; // stores the vertex that led to the vertex represented by the index in the array (stores the path)
+    private final int[] distTo; // stores the distance from the reference vertex to the vertex represented by the index in the array
+    private final int[] queue; // ring buffer of the vertices whose adjacents need to be visited
+    private final int[] adjacent = new int[4]; // buffer for the vertices adjacent to a vertex (at most four in a grid)
+    private int epoch; // number of the current search
+    private int source = -1; // reference vertex of the current search
+
+    /**
+     * Constructs a search engine for a given graph. No search is carried out until {@link #search(int)} is called.
+     * @param g the base graph
+     */
+    public BreadthFirstSearchEngine(Graph g) {
+        this.g         = g;
+        this.visitedIn = new int[g.getVertexCount()];
+        this.edgeTo    = new int[g.getVertexCount()];
+        this.distTo    = new int[g.getVertexCount()];
+        this.queue     = new int[g.getVertexCount()];
+    }
+
+    /**
+     * Carries out the breadth-first search algorithm for a given reference vertex, discarding the results of the previous search.
+     * @param s the reference vertex
+     */
+    public void search(int s) { bfs(s, -1); }
+
+    /**
+     * Returns the length of the shortest path from a source vertex to a target vertex, stopping the search as soon as the target is
+     * reached. After this method returns, the results of {@link #hasPathTo(int)} and {@link #distanceTo(int)} are only complete for the
+     * vertices that were visited before the search stopped.
+     * @param s the source vertex (reference vertex of the search)
+     * @param t the target vertex
+     * @return the distance from {@code s} to {@code t}, or {@link #UNREACHABLE} if there isn't a path from {@code s} to {@code t}
+     */
+    @Override
+    public int distance(int s, int t) { return bfs(s, t); }
+
+    /**
+     * Implements the breadth-first search algorithm.
+     * @param s the reference vertex
+     * @param t the target vertex, at which the search stops, or -1 to visit the whole component of {@code s}
+     * @return the distance from {@code s} to {@code t}, or {@link #UNREACHABLE} if {@code t} was not reached
+     */
+    private int bfs(int s, int t) {
+        startEpoch(s);
+        if (s == t) return 0;
+
+        int head = 0; // position of the next vertex to be removed from the queue
+        int size = 0; // number of vertices in the queue
+        queue[0] = s;
+        size++;
+
+        while (size > 0) { // while there are vertices whose adjacent need to be visited
+            int v = queue[head]; // get the source node
+            if (++head == queue.length) head = 0;
+            size--;
+            int adjacentCount = g.neighbours(v, adjacent);
+            for (int i=0; i<adjacentCount; i++) { // for each vertex adjacent to v
+                int w = adjacent[i];
+                if (visitedIn[w] != epoch) { // if it has not been visited in this search
+                    visitedIn[w] = epoch;
+                    edgeTo[w] = v;
+                    distTo[w] = distTo[v] + 1;
+                    if (w == t) return distTo[w]; // in a breadth-first search, the distance is final as soon as the vertex is reached
+                    int tail = head + size;
+                    queue[tail < queue.length ? tail : tail - queue.length] = w;
+                    size++;
+                }
+            }
+        }
+        return UNREACHABLE;
+    }
+
+    // starts a new epoch, marking the reference vertex as the only visited vertex
+    private void startEpoch(int s) {
+        if (++epoch == Integer.MAX_VALUE) { // the stamps would become ambiguous, so clear them (once every ~2 billion searches)
+            Arrays.fill(visitedIn, 0);
+            epoch = 1;
+        }
+        source = s;
+        visitedIn[s] = epoch;
+        edgeTo[s] = -1; // no vertex led to the reference vertex (entry point)
+        distTo[s] = 0; // distance from the reference vertex to itself is 0
+    }
+
+    /**
+     * Returns the reference vertex of the last search.
+     * @return the reference vertex of the last search, or -1 if no search has been carried out yet
+     */
+    public int getSource() { return source; }
+
+    /**
+     * Returns whether or not a given vertex has a path to the reference vertex of the last search.
+     * @param v the vertex to be found out whether or not it has a path to the reference vertex
+     * @return {@code true} if there is a path leading from {@code v} to the reference vertex; {@code false} if not
+     */
+    public boolean hasPathTo(int v) { return epoch != 0 && visitedIn[v] == epoch; }
+
+    /**
+     * Returns the path from a given vertex to the reference vertex of the last search. Each vertex of the path is boxed, so
+     * {@link #pathTo(int, int[], int)} should be preferred for long paths.
+     * @param v the vertex from which it is wished to find out the path to the reference vertex
+     * @return the path from {@code v} to the reference vertex as an {@code Iterable}, or {@code null} if there isn't a path
+     */
+    public Iterable<Integer> pathTo(int v) {
+        if (!this.hasPathTo(v)) return null;
+
+        Bag<Integer> path = new Bag<>();
+        for (int x = v; x != -1; x = edgeTo[x]) path.add(x);
+        return path;
+    }
+
+    /**
+     * Writes the path from the reference vertex of the last search to a given vertex into a given buffer, without allocating any memory.
+     * @param v the last vertex of the path
+     * @param out the buffer that receives the vertices of the path, from the reference vertex to {@code v}
+     * @param offset the index of the buffer that receives the reference vertex; the buffer must have room for {@code distanceTo(v)+1}
+     *               vertices from it
+     * @return the number of vertices written (the distance to {@code v} plus one), or {@link #UNREACHABLE} if there isn't a path
+     * @throws ArrayIndexOutOfBoundsException if the buffer is too small for the path
+     */
+    public int pathTo(int v, int[] out, int offset) {
+        if (!this.hasPathTo(v)) return UNREACHABLE;
+
+        int length = distTo[v] + 1;
+        for (int x = v, i = offset+length-1; x != -1; x = edgeTo[x], i--) out[i] = x; // from v back to the reference vertex
+        return length;
+    }
+
+    /**
+     * Returns how many vertices apart a given vertex is from the reference vertex of the last search.
+     * @param v the vertex from which it is wished to find out the distance to the reference vertex
+     * @return the distance from {@code v} to the reference vertex, or {@link #UNREACHABLE} if there isn't a path from {@code v} to the
+     *         reference vertex
+     */
+    public int distanceTo(int v) { return hasPathTo(v) ? distTo[v] : UNREACHABLE; }
+}
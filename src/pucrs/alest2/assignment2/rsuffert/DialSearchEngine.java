@@ -0,0 +1,238 @@
+package pucrs.alest2.assignment2.rsuffert;
+
+import java.util.Arrays;
+
+/**
+ * The {@link DialSearchEngine} class finds the cheapest paths of a map graph whose cells have {@link TerrainCosts}, in which moving into a
+ * cell costs the cost of its character. Since the costs are small integers, it does not need the binary heap of Dijkstra's algorithm:
+ * it runs Dial's algorithm, which keeps one bucket of vertices per distance in a ring of {@code maxCost+1} buckets (all the distances
+ * waiting to be settled are within {@code maxCost} of the current one) and empties the buckets in order of distance. The search takes
+ * time proportional to the number of vertices and edges visited plus the largest distance. If every cost is 0 or 1, the ring has two
+ * buckets, the one being emptied and the next one, which makes it the two-queue form of the 0-1 breadth-first search; with uniform
+ * costs, each vertex is added only once, so it does the same work as a {@link BreadthFirstSearchEngine}.
+ * <p>
+ * Like the {@link BreadthFirstSearchEngine}, an instance is meant to be allocated once per {@link Graph} and reused: its arrays are
+ * stamped with the number of the search instead of being cleared, and its queues only grow. The results of the last search remain
+ * available until the next search is started. Instances of this class are not thread-safe.
+ * @author Ricardo Süffert
+ */
+public class DialSearchEngine implements PointToPointSearch {
+    private static final int INITIAL_QUEUE_CAPACITY = 1024; // initial capacity of each bucket
+
+    private final Graph g; // the base graph
+    private final byte[] cells; // the cells of the graph, whose characters give the costs
+    private final TerrainCosts costs; // the costs of the characters of the cells
+    private final int[] reachedIn; // stores the epoch of the last search that reached the vertex represented by the index in the array
+    private final int[] edgeTo; // stores the vertex that led to the vertex represented by the index in the array (stores the path)
+    private final int[] distTo; // stores the cost of the cheapest path found from the reference vertex to the vertex
+    private final int[] adjacent = new int[4]; // buffer for the vertices adjacent to a vertex (at most four in a grid)
+    private final int[] target = new int[1]; // buffer for the target of a point-to-point search
+    private final int[][] buckets; // ring of buckets, where buckets[d % buckets.length] holds the vertices of distance d
+    private final int[] bucketHeads; // index of the next vertex to be removed from each bucket
+    private final int[] bucketSizes; // number of vertices added to each bucket
+    private int epoch; // number of the current search
+    private int source = -1; // reference vertex of the current search
+    private long settledCount; // number of vertices settled by the last search (only counted when the instrumentation is enabled)
+    private long edgesScanned; // number of edges scanned by the last search (only counted when the instrumentation is enabled)
+    private int peakQueue; // largest number of vertices waiting in the last search (only measured when the instrumentation is enabled)
+
+    /**
+     * Constructs a search engine for a given graph, with the costs the graph was loaded with. No search is carried out until
+     * {@link #search(int)} is called.
+     * @param g the base graph
+     */
+    public DialSearchEngine(Graph g) {
+        this.g         = g;
+        this.cells     = g.getCells();
+        this.costs     = g.getTerrainCosts();
+        this.reachedIn = new int[g.getVertexCount()];
+        this.edgeTo    = new int[g.getVertexCount()];
+        this.distTo    = new int[g.getVertexCount()];
+        int ring = Math.max(2, costs.getMaxCost() + 1); // all the distances waiting to be settled are within maxCost of the current one
+        this.buckets     = new int[ring][INITIAL_QUEUE_CAPACITY];
+        this.bucketHeads = new int[ring];
+        this.bucketSizes = new int[ring];
+    }
+
+    /**
+     * Finds the cheapest paths from a given reference vertex to every vertex of its component, discarding the results of the previous
+     * search.
+     * @param s the reference vertex
+     */
+    public void search(int s) { search(s, null, 0); }
+
+    /**
+     * Returns the cost of the cheapest path from a source vertex to a target vertex, stopping the search as soon as the cost of the
+     * target is final. After this method returns, the results of {@link #hasPathTo(int)} and {@link #distanceTo(int)} are only final for
+     * the vertices that are not more expensive to reach than the target.
+     * @param s the source vertex (reference vertex of the search)
+     * @param t the target vertex
+     * @return the cost of the cheapest path from {@code s} to {@code t}, or {@link #UNREACHABLE} if there isn't a path from {@code s} to
+     *         {@code t}
+     */
+    @Override
+    public int distance(int s, int t) {
+        target[0] = t;
+        search(s, target, 1);
+        return distanceTo(t);
+    }
+
+    /**
+     * Finds the cheapest paths from a given reference vertex, stopping as soon as the costs of all the given targets are final. Only
+     * distinct targets that are in the component of the reference vertex should be given, or the search visits the whole component.
+     * @param s the reference vertex
+     * @param targets the targets, or {@code null} to visit the whole component of {@code s}
+     * @param targetsCount the number of targets, taken from the beginning of the array
+     */
+    void search(int s, int[] targets, int targetsCount) {
+        startEpoch(s);
+        int targetsLeft = targets == null ? 0 : targetsCount; // the reference vertex is settled first, so it counts as any other target
+        if (targets != null && targetsCount == 0) return;
+        int firstTarget = targetsCount == 1 ? targets[0] : -1; // the common case, which is checked without a loop
+        if (costs.isUniform()) breadthFirstSearch(s, targets, targetsCount, firstTarget, targetsLeft);
+        else dialSearch(s, targets, targetsCount, firstTarget, targetsLeft);
+    }
+
+    /**
+     * Implements the breadth-first search used when every move costs 1, in which the cost of a vertex is final as soon as it is reached,
+     * so the search stops as soon as the last target is reached. The first bucket is used as the queue.
+     * @param s the reference vertex
+     * @param targets the targets, or {@code null} to visit the whole component of {@code s}
+     * @param targetsCount the number of targets
+     * @param firstTarget the only target, if there is exactly one of them, or -1 otherwise
+     * @param targetsLeft the number of targets
+     */
+    private void breadthFirstSearch(int s, int[] targets, int targetsCount, int firstTarget, int targetsLeft) {
+        if (targets != null && isTarget(s, targets, targetsCount, firstTarget) && --targetsLeft == 0) return;
+        int[] queue = buckets[0];
+        int head = 0, tail = 0;
+        queue[tail++] = s;
+
+        while (head < tail) {
+            int v = queue[head++];
+            if (Instrumentation.ENABLED) settledCount++;
+            int adjacentCount = g.neighbours(v, adjacent);
+            if (Instrumentation.ENABLED) edgesScanned += adjacentCount;
+            for (int i=0; i<adjacentCount; i++) {
+                int w = adjacent[i];
+                if (reachedIn[w] == epoch) continue; // it has been reached by this search, at its final cost
+                reachedIn[w] = epoch;
+                edgeTo[w] = v;
+                distTo[w] = distTo[v] + 1;
+                if (targets != null && isTarget(w, targets, targetsCount, firstTarget) && --targetsLeft == 0) return;
+                if (tail == queue.length) queue = buckets[0] = Arrays.copyOf(queue, 2 * queue.length); // only grows up to the component
+                queue[tail++] = w;
+            }
+            if (Instrumentation.ENABLED && tail-head > peakQueue) peakQueue = tail-head;
+        }
+    }
+
+    /**
+     * Implements Dial's algorithm. Each bucket is emptied in the order its vertices were added, so that, as in a breadth-first search, the
+     * vertices of the same distance are expanded in waves. A vertex is added again whenever its cost is lowered, and the older copies
+     * are told apart because they belong to a higher distance than the cost of the vertex.
+     * @param s the reference vertex
+     * @param targets the targets, or {@code null} to visit the whole component of {@code s}
+     * @param targetsCount the number of targets
+     * @param firstTarget the only target, if there is exactly one of them, or -1 otherwise
+     * @param targetsLeft the number of targets
+     */
+    private void dialSearch(int s, int[] targets, int targetsCount, int firstTarget, int targetsLeft) {
+        int ring = buckets.length;
+        Arrays.fill(bucketHeads, 0); // a search that stopped early may have left vertices behind
+        Arrays.fill(bucketSizes, 0);
+        buckets[0][0] = s;
+        bucketSizes[0] = 1;
+        int pending = 1; // number of vertices in all the buckets
+
+        for (int dist=0, b=0; pending > 0; dist++, b = b+1 < ring ? b+1 : 0) {
+            while (bucketHeads[b] < bucketSizes[b]) { // the bucket may receive vertices reached at no cost while it is emptied
+                int v = buckets[b][bucketHeads[b]++];
+                pending--;
+                if (distTo[v] != dist) continue; // an older copy of a vertex whose cost was lowered after it was added
+                if (Instrumentation.ENABLED) settledCount++;
+                if (targets != null && isTarget(v, targets, targetsCount, firstTarget) && --targetsLeft == 0) return;
+
+                int adjacentCount = g.neighbours(v, adjacent);
+                if (Instrumentation.ENABLED) edgesScanned += adjacentCount;
+                for (int i=0; i<adjacentCount; i++) {
+                    int w = adjacent[i];
+                    int cost = costs.of(cells[w]);
+                    int reached = dist + cost;
+                    if (reachedIn[w] == epoch && distTo[w] <= reached) continue; // it has been reached by this search at no higher cost
+                    reachedIn[w] = epoch;
+                    distTo[w] = reached;
+                    edgeTo[w] = v;
+                    int into = b + cost < ring ? b + cost : b + cost - ring;
+                    if (bucketSizes[into] == buckets[into].length) buckets[into] = Arrays.copyOf(buckets[into], 2 * buckets[into].length);
+                    buckets[into][bucketSizes[into]++] = w;
+                    pending++;
+                }
+                if (Instrumentation.ENABLED && pending > peakQueue) peakQueue = pending;
+            }
+            bucketHeads[b] = bucketSizes[b] = 0;
+        }
+    }
+
+    // returns whether or not a vertex is one of the targets of the search
+    private static boolean isTarget(int v, int[] targets, int targetsCount, int firstTarget) {
+        if (firstTarget != -1) return v == firstTarget;
+        for (int i=0; i<targetsCount; i++) if (targets[i] == v) return true;
+        return false;
+    }
+
+    // starts a new epoch, marking the reference vertex as the only reached vertex
+    private void startEpoch(int s) {
+        if (++epoch == Integer.MAX_VALUE) { // the stamps would become ambiguous, so clear them (once every ~2 billion searches)
+            Arrays.fill(reachedIn, 0);
+            epoch = 1;
+        }
+        source = s;
+        reachedIn[s] = epoch;
+        edgeTo[s] = -1; // no vertex led to the reference vertex (entry point)
+        distTo[s] = 0; // the reference vertex costs nothing to reach from itself
+        settledCount = edgesScanned = 0;
+        peakQueue = 1;
+    }
+
+    /**
+     * Returns the reference vertex of the last search.
+     * @return the reference vertex of the last search, or -1 if no search has been carried out yet
+     */
+    public int getSource() { return source; }
+
+    /**
+     * Returns whether or not a given vertex has been reached by the last search.
+     * @param v the vertex
+     * @return {@code true} if there is a path from the reference vertex to {@code v}; {@code false} if not
+     */
+    public boolean hasPathTo(int v) { return epoch != 0 && reachedIn[v] == epoch; }
+
+    /**
+     * Returns the path from the reference vertex of the last search to a given vertex.
+     * @param v the last vertex of the path
+     * @return the path from the reference vertex to {@code v} as an {@code Iterable}, or {@code null} if there isn't a path
+     */
+    public Iterable<Integer> pathTo(int v) {
+        if (!this.hasPathTo(v)) return null;
+
+        Bag<Integer> path = new Bag<>(); // a bag lists the vertices backwards, so they come out from the reference vertex
+        for (int x = v; x != -1; x = edgeTo[x]) path.add(x);
+        return path;
+    }
+
+    /**
+     * Returns the cost of the cheapest path from the reference vertex of the last search to a given vertex.
+     * @param v the vertex
+     * @return the cost of the cheapest path to {@code v}, or {@link #UNREACHABLE} if there isn't a path from the reference vertex to
+     *         {@code v}
+     */
+    public int distanceTo(int v) { return hasPathTo(v) ? distTo[v] : UNREACHABLE; }
+
+    // the counters of the last search, for the instrumentation
+    long getSettledCount() { return settledCount; }
+
+    long getEdgesScanned() { return edgesScanned; }
+
+    int getPeakQueue() { return peakQueue; }
+}
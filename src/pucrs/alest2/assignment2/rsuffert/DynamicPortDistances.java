@@ -0,0 +1,245 @@
+package pucrs.alest2.assignment2.rsuffert;
+
+import java.util.Arrays;
+
+/**
+ * The {@link DynamicPortDistances} class keeps the distance field of every port of a map (the distance from the port to each vertex) up
+ * to date while the cells of the map change between water and obstacle. Instead of searching the whole map again, each change repairs
+ * the fields with a dynamic breadth-first search that only touches the vertices whose distances change:
+ * <ul>
+ * <li>when an obstacle is removed, distances can only decrease, so the new distance of the cell is taken from its neighbours and the
+ * improvement is propagated outwards, stopping at the vertices that do not improve;</li>
+ * <li>when an obstacle is placed, distances can only increase, and only for the vertices whose shortest paths all went through the
+ * cell. These "affected" vertices are found level by level, starting at the neighbours of the cell: a vertex is affected if none of its
+ * neighbours one step closer to the port is still unaffected. Their new distances are then seeded from their unaffected neighbours and
+ * settled with a priority queue, since the seeds are at different distances.</li>
+ * </ul>
+ * The distances between the ports are answered by looking up the field of the origin port. The fields take four bytes per vertex and
+ * per port, and an instance is not thread-safe.
+ * @author Ricardo Süffert
+ */
+public class DynamicPortDistances implements PortDistances {
+    private static final int MAX_PORTS = 10; // ports are single digits
+    private static final int INFINITY = Integer.MAX_VALUE; // distance of the vertices that cannot be reached
+
+    private final Graph g; // the base graph, which is changed through this instance
+    private final int[] portCodes; // portCodes[p] contains the code of port p, or -1 if the port is not in the map
+    private final int[][] fields; // fields[p][v] is the distance from port p to vertex v, or null if there is no port p
+    private final int[] queue; // vertices to be examined by the current repair
+    private final int[] affected; // vertices whose distances are invalidated by the placement of an obstacle
+    private final int[] queuedIn; // stores the epoch of the last repair that added the vertex to the queue
+    private final int[] affectedIn; // stores the epoch of the last repair in which the vertex was affected
+    private final IntMinHeap settling = new IntMinHeap(64); // affected vertices to be settled, ordered by their distance
+    private final int[] adjacent = new int[4]; // buffer for the vertices adjacent to a vertex (at most four in a grid)
+    private final int[] adjacentOfAdjacent = new int[4]; // buffer for the vertices adjacent to an adjacent vertex
+    private int epoch; // number of the current repair
+    private long repairedCount; // number of vertices whose distance was examined by the last change
+
+    /**
+     * Computes the distance fields of all the ports of a given map graph.
+     * @param g the map graph
+     * @throws IllegalArgumentException if the {@link TerrainCosts} of the graph are not uniform, since the fields count moves
+     */
+    public DynamicPortDistances(Graph g) {
+        if (!g.getTerrainCosts().isUniform()) throw new IllegalArgumentException("the distance fields only support uniform costs");
+        this.g          = g;
+        this.portCodes  = new int[MAX_PORTS];
+        this.fields     = new int[MAX_PORTS][];
+        this.queue      = new int[g.getVertexCount()];
+        this.affected   = new int[g.getVertexCount()];
+        this.queuedIn   = new int[g.getVertexCount()];
+        this.affectedIn = new int[g.getVertexCount()];
+        for (int p=0; p<MAX_PORTS; p++) {
+            Integer code = g.translatePortToCode(p);
+            portCodes[p] = code == null ? -1 : code;
+            if (code != null) fields[p] = field(code);
+        }
+    }
+
+    /**
+     * Carries out a complete breadth-first search from a given vertex.
+     * @param s the reference vertex
+     * @return the distance from {@code s} to each vertex, or {@link #INFINITY} for the vertices that cannot be reached
+     */
+    private int[] field(int s) {
+        int[] distTo = new int[g.getVertexCount()];
+        Arrays.fill(distTo, INFINITY);
+        int head = 0, tail = 0;
+        queue[tail++] = s;
+        distTo[s] = 0;
+        while (head < tail) {
+            int v = queue[head++];
+            int adjacentCount = g.neighbours(v, adjacent);
+            for (int i=0; i<adjacentCount; i++) {
+                int w = adjacent[i];
+                if (distTo[w] == INFINITY) {
+                    distTo[w] = distTo[v] + 1;
+                    queue[tail++] = w;
+                }
+            }
+        }
+        return distTo;
+    }
+
+    /**
+     * Turns a given vertex of the map into an obstacle or into water (see {@link Graph#setObstacle(int, boolean)}) and repairs the
+     * distance fields of all the ports.
+     * @param v the vertex
+     * @param obstacle {@code true} to turn {@code v} into an obstacle; {@code false} to turn it into water
+     * @return {@code true} if the vertex has changed; {@code false} if it already was as requested
+     * @throws IllegalArgumentException unless {@code 0 <= v < V}, or if {@code v} is a port and {@code obstacle} is {@code true}
+     */
+    public boolean setObstacle(int v, boolean obstacle) {
+        if (!g.setObstacle(v, obstacle)) return false;
+        repairedCount = 0;
+        for (int[] distTo : fields) {
+            if (distTo == null) continue;
+            if (obstacle) placeObstacle(distTo, v);
+            else          removeObstacle(distTo, v);
+        }
+        return true;
+    }
+
+    /**
+     * Repairs a distance field after an obstacle has been removed from a vertex.
+     * @param distTo the distance field
+     * @param v the vertex that has become water
+     */
+    private void removeObstacle(int[] distTo, int v) {
+        int best = INFINITY;
+        int adjacentCount = g.neighbours(v, adjacent);
+        for (int i=0; i<adjacentCount; i++) best = Math.min(best, plusOne(distTo[adjacent[i]]));
+        distTo[v] = best;
+        if (best == INFINITY) return; // the cell does not connect to the port, so nothing improves
+
+        // the improvements all come from v, so a FIFO queue examines the vertices in the order of their new distances
+        int head = 0, tail = 0;
+        queue[tail++] = v;
+        while (head < tail) {
+            int x = queue[head++];
+            adjacentCount = g.neighbours(x, adjacent);
+            for (int i=0; i<adjacentCount; i++) {
+                int y = adjacent[i];
+                if (distTo[x] + 1 < distTo[y]) {
+                    distTo[y] = distTo[x] + 1;
+                    queue[tail++] = y;
+                }
+            }
+        }
+        repairedCount += tail;
+    }
+
+    /**
+     * Repairs a distance field after an obstacle has been placed on a vertex.
+     * @param distTo the distance field
+     * @param v the vertex that has become an obstacle
+     */
+    private void placeObstacle(int[] distTo, int v) {
+        int removed = distTo[v];
+        distTo[v] = INFINITY;
+        if (removed == INFINITY) return; // the cell was not reachable, so no path went through it
+        if (++epoch == Integer.MAX_VALUE) { // the stamps would become ambiguous, so clear them
+            Arrays.fill(queuedIn, 0);
+            Arrays.fill(affectedIn, 0);
+            epoch = 1;
+        }
+
+        // find the affected vertices, one level at a time: the candidates are the vertices one step further than an affected vertex
+        int head = 0, tail = 0, affectedCount = 0;
+        int adjacentCount = g.neighbours(v, adjacent);
+        for (int i=0; i<adjacentCount; i++) {
+            int w = adjacent[i];
+            if (distTo[w] == removed + 1 && queuedIn[w] != epoch) {
+                queuedIn[w] = epoch;
+                queue[tail++] = w;
+            }
+        }
+        while (head < tail) {
+            int w = queue[head++];
+            if (hasSupport(distTo, w)) continue;
+            affectedIn[w] = epoch;
+            affected[affectedCount++] = w;
+            adjacentCount = g.neighbours(w, adjacent);
+            for (int i=0; i<adjacentCount; i++) {
+                int y = adjacent[i];
+                if (distTo[y] == distTo[w] + 1 && queuedIn[y] != epoch) {
+                    queuedIn[y] = epoch;
+                    queue[tail++] = y;
+                }
+            }
+        }
+        repairedCount += tail;
+
+        // seed the affected vertices from their unaffected neighbours, whose distances have not changed
+        settling.clear();
+        for (int a=0; a<affectedCount; a++) {
+            int w = affected[a];
+            int best = INFINITY;
+            adjacentCount = g.neighbours(w, adjacent);
+            for (int i=0; i<adjacentCount; i++) {
+                int y = adjacent[i];
+                if (affectedIn[y] != epoch) best = Math.min(best, plusOne(distTo[y]));
+            }
+            distTo[w] = best;
+            if (best != INFINITY) settling.push(best, w);
+        }
+
+        // settle the affected vertices in the order of their distances (as in Dijkstra's algorithm)
+        while (!settling.isEmpty()) {
+            long key = settling.peekKey();
+            int w = settling.pop();
+            if (key != distTo[w]) continue; // outdated entry: the vertex was reached again through a shorter path
+            adjacentCount = g.neighbours(w, adjacent);
+            for (int i=0; i<adjacentCount; i++) {
+                int y = adjacent[i];
+                if (affectedIn[y] == epoch && distTo[w] + 1 < distTo[y]) {
+                    distTo[y] = distTo[w] + 1;
+                    settling.push(distTo[y], y);
+                }
+            }
+        }
+    }
+
+    // returns whether or not a vertex still has an unaffected neighbour one step closer to the port
+    private boolean hasSupport(int[] distTo, int w) {
+        int adjacentCount = g.neighbours(w, adjacentOfAdjacent);
+        for (int i=0; i<adjacentCount; i++) {
+            int u = adjacentOfAdjacent[i];
+            if (distTo[u] == distTo[w] - 1 && affectedIn[u] != epoch) return true;
+        }
+        return false;
+    }
+
+    // returns a distance plus one, keeping the unreachable vertices unreachable
+    private static int plusOne(int distance) { return distance == INFINITY ? INFINITY : distance + 1; }
+
+    /**
+     * Returns the distance from a port to any vertex of the map.
+     * @param port the number of the port
+     * @param v the vertex
+     * @return the distance from the port to {@code v}, or {@link #UNREACHABLE} if there isn't a path between them
+     * @throws IllegalArgumentException if the port is not in the map
+     */
+    public int distanceTo(int port, int v) {
+        if (port < 0 || port >= MAX_PORTS || fields[port] == null) throw new IllegalArgumentException("port " + port + " is not in the map");
+        int distance = fields[port][v];
+        return distance == INFINITY ? UNREACHABLE : distance;
+    }
+
+    /**
+     * Returns how many vertices had their distances examined by the last change, summed over all the ports, which shows how far the
+     * repair had to reach.
+     * @return the number of vertices examined by the last change
+     */
+    public long getRepairedCount() { return repairedCount; }
+
+    @Override
+    public int getPortsCount() { return g.getPortsCount(); }
+
+    @Override
+    public int distance(int fromPort, int toPort) {
+        if (toPort < 0 || toPort >= MAX_PORTS || portCodes[toPort] == -1)
+            throw new IllegalArgumentException("port " + toPort + " is not in the map");
+        return distanceTo(fromPort, portCodes[toPort]);
+    }
+}
@@ -0,0 +1,389 @@
+package pucrs.alest2.assignment2.rsuffert;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * The {@link ExternalPortDistances} class computes the distances between the ports of a map that does not fit in memory, keeping the
+ * data of the searches within a fixed budget of heap space. Nothing of the size of the map is held in memory:
+ * <ol>
+ * <li>the map file is streamed once, row by row, into a file with one bit per cell (set for the obstacles), recording the positions of
+ * the ports on the way;</li>
+ * <li>the breadth-first search from each port works on a copy of that file, in which it also sets the bits of the cells it reaches, so a
+ * set bit means "blocked or already visited". The copy is accessed through a {@link PagedBitFile}, whose pages are bands of rows;</li>
+ * <li>the search advances one level at a time, and each level (its frontier) is a {@link SpillableLongList} of vertices in increasing
+ * order. The next level is the merge of the four sorted sequences of neighbours (the frontier shifted by one row up and down and by one
+ * column left and right), so it is also sorted, and the bits of each level are swept through the bands of rows in order.</li>
+ * </ol>
+ * Since all the vertices of a level are at the same distance, no distance needs to be stored per cell, only those of the ports. The
+ * search from a port stops as soon as all the other ports have been reached, and no search is run from the last port, whose distances
+ * are known from the others. Half of the budget goes to the pages of the bit file, a quarter to the frontiers and an eighth to the eight
+ * buffers through which the files are read and written (those of the two frontiers, of their four readers, of the map file and of the
+ * bit file, of up to 64 KiB each); the rest covers the page read before one is evicted and the bookkeeping. The temporary files are
+ * created in a given directory (by default, that of the map file, since the system temporary directory is often kept in memory) and are
+ * deleted when the distances have been computed.
+ * @author Ricardo Süffert
+ */
+public class ExternalPortDistances implements PortDistances {
+    /**
+     * The default budget of heap space of the searches: 64 MiB.
+     */
+    public static final long DEFAULT_HEAP_BUDGET = 64L << 20;
+
+    /**
+     * The smallest budget of heap space accepted: 1 MiB.
+     */
+    public static final long MIN_HEAP_BUDGET = 1L << 20;
+
+    private static final int MAX_PORTS = 10; // ports are single digits
+    private static final int PAGE_SIZE = 64 << 10; // number of bytes in a page of the bit file (a power of two)
+    private static final int MAX_BUFFER_SIZE = 64 << 10; // largest number of bytes read from or written to a file at once
+    private static final int BUFFERS = 8; // number of buffers of the files (see the documentation of the class)
+    private static final int NORTH = 0, WEST = 1, EAST = 2, SOUTH = 3; // directions of the neighbours of a frontier
+
+    private final int lines; // number of lines (rows) in the map
+    private final int columns; // number of columns in the map
+    private final long vertexCount; // number of vertices in the map
+    private final long[] portCodes; // portCodes[p] contains the vertex code of port p, or -1 if there is no such port
+    private int portsCount; // number of distinct ports in the map
+    private final int bufferSize; // number of bytes read from or written to a file at once, a multiple of Long.BYTES
+    private final int[][] distances; // distances[p][q] is the distance from port p to port q, or null if no search was run from p
+
+    /**
+     * Computes the distances between the ports of a given map file within a given budget of heap space, with the temporary files in the
+     * directory of the map file.
+     * @param map the path to the map file
+     * @param heapBudget the number of bytes of heap space the searches may use (at least {@link #MIN_HEAP_BUDGET})
+     * @throws IOException if the map file could not be read or the temporary files could not be written
+     * @throws MapFormatException if the contents of the file do not conform with the specification for input files
+     */
+    public ExternalPortDistances(Path map, long heapBudget) throws IOException {
+        this(map, heapBudget, map.toAbsolutePath().getParent(), Instrumentation.DISABLED);
+    }
+
+    /**
+     * Computes the distances between the ports of a given map file within a given budget of heap space, recording the conversion of the
+     * map as the {@code parse} phase, the searches as the {@code searches} phase and the counters of each search.
+     * @param map the path to the map file
+     * @param heapBudget the number of bytes of heap space the searches may use (at least {@link #MIN_HEAP_BUDGET})
+     * @param workDirectory where the temporary files are created
+     * @param metrics where the phases and the counters of the searches are recorded
+     * @throws IOException if the map file could not be read or the temporary files could not be written
+     * @throws MapFormatException if the contents of the file do not conform with the specification for input files
+     */
+    public ExternalPortDistances(Path map, long heapBudget, Path workDirectory, Instrumentation metrics) throws IOException {
+        if (heapBudget < MIN_HEAP_BUDGET) throw new IllegalArgumentException("heapBudget must be at least " + MIN_HEAP_BUDGET + " bytes");
+        this.portCodes = new long[MAX_PORTS];
+        this.distances = new int[MAX_PORTS][];
+        Arrays.fill(portCodes, -1);
+
+        Path obstacles = Files.createTempFile(workDirectory, "obstacles", ".tmp");
+        Path blocked   = Files.createTempFile(workDirectory, "blocked", ".tmp");
+        int maxPages = (int) Math.max(1, heapBudget / 2 / PAGE_SIZE);
+        int frontierCapacity = (int) Math.min(Integer.MAX_VALUE - 8, heapBudget / 8 / Long.BYTES);
+        this.bufferSize = (int) Math.min(MAX_BUFFER_SIZE, heapBudget / 8 / BUFFERS) / Long.BYTES * Long.BYTES;
+        try (SpillableLongList current = new SpillableLongList(frontierCapacity, bufferSize / Long.BYTES, workDirectory);
+             SpillableLongList next    = new SpillableLongList(frontierCapacity, bufferSize / Long.BYTES, workDirectory)) {
+            long start = metrics.start();
+            int[] header = convert(map, obstacles);
+            this.lines       = header[0];
+            this.columns     = header[1];
+            this.vertexCount = (long) lines * columns;
+            metrics.stop("parse", start);
+
+            start = metrics.start();
+            int lastPort = -1;
+            for (int p=0; p<MAX_PORTS; p++) if (portCodes[p] != -1) lastPort = p;
+            for (int p=0; p<lastPort; p++) {
+                if (portCodes[p] == -1) continue;
+                Files.copy(obstacles, blocked, StandardCopyOption.REPLACE_EXISTING);
+                PagedBitFile visited = new PagedBitFile(blocked, vertexCount, PAGE_SIZE, maxPages);
+                try {
+                    distances[p] = search(p, visited, current, next, metrics);
+                } finally {
+                    visited.discard(); // the copy is replaced by the next search, so its pages in memory are not written back
+                }
+            }
+            metrics.stop("searches", start);
+        } finally {
+            Files.deleteIfExists(obstacles);
+            Files.deleteIfExists(blocked);
+        }
+    }
+
+    /**
+     * Streams the map file into a file with one bit per cell, set for the obstacles, recording the positions of the ports. The file is
+     * validated like {@link MapFileParser} does, and a line terminator ({@link MapFileParser#isLineTerminator(int)}) is never taken as a
+     * cell.
+     * @param map the path to the map file
+     * @param obstacles the path to the bit file
+     * @return an array containing the number of lines and the number of columns, in this order
+     * @throws IOException if the map file could not be read or the bit file could not be written
+     * @throws MapFormatException if the contents of the file do not conform with the specification for input files
+     */
+    private int[] convert(Path map, Path obstacles) throws IOException {
+        try (InputStream in = Files.newInputStream(map);
+             FileChannel out = FileChannel.open(obstacles, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MapReader reader = new MapReader(in, bufferSize);
+
+            // skip the UTF-8 byte order mark, if there is one
+            if (reader.peek() == 0xEF) {
+                reader.read();
+                if (reader.read() != 0xBB || reader.read() != 0xBF)
+                    throw new MapFormatException("O cabeçalho do mapa deve conter apenas o número de linhas e o número de colunas");
+            }
+            int[] header = parseHeader(reader);
+            int lines = header[0], columns = header[1];
+
+            ByteBuffer bits = ByteBuffer.allocate(bufferSize);
+            int bitsByte = 0; // the byte being filled, with the bits of the cells since the last multiple of eight
+            long v = 0;
+            for (int row=0; row<lines; row++) {
+                if (reader.peek() < 0)
+                    throw new MapFormatException(String.format("O mapa possui %d linha(s), mas o cabeçalho indica %d", row, lines));
+                for (int column=0; column<columns; column++, v++) {
+                    int b = reader.read();
+                    if (b < 0 || MapFileParser.isLineTerminator(b)) // a shorter row
+                        throw new MapFormatException(String.format("A linha %d do mapa possui %d coluna(s), mas o cabeçalho indica %d",
+                                                                   row+1, column, columns));
+                    if (b == Graph.OBSTACLE) bitsByte |= 1 << (v & 7);
+                    else if (b >= '0' && b <= '9') {
+                        if (portCodes[b - '0'] == -1) portsCount++;
+                        portCodes[b - '0'] = v;
+                    }
+                    if ((v & 7) == 7) {
+                        if (!bits.hasRemaining()) write(out, bits);
+                        bits.put((byte) bitsByte);
+                        bitsByte = 0;
+                    }
+                }
+                // the row must end here, with a line terminator or the end of the file
+                int b = reader.read();
+                if (b == '\r' && (reader.peek() == '\n' || reader.peek() < 0)) b = reader.peek() < 0 ? -1 : reader.read();
+                if (b != '\n' && b >= 0) {
+                    long length = columns + 1;
+                    while ((b = reader.read()) >= 0 && b != '\n') length++;
+                    throw new MapFormatException(String.format("A linha %d do mapa possui %d coluna(s), mas o cabeçalho indica %d",
+                                                               row+1, length, columns));
+                }
+            }
+            if ((v & 7) != 0) {
+                if (!bits.hasRemaining()) write(out, bits);
+                bits.put((byte) bitsByte);
+            }
+            write(out, bits);
+
+            // only blank lines may follow the grid
+            for (int b = reader.read(); b >= 0; b = reader.read()) {
+                if (b != '\n' && b != '\r' && b != ' ' && b != '\t')
+                    throw new MapFormatException(String.format("O mapa possui mais linhas do que as %d indicadas no cabeçalho", lines));
+            }
+            return header;
+        }
+    }
+
+    /**
+     * Parses the header of the map file, which contains the number of lines and the number of columns of the map.
+     * @param reader the reader of the map file, positioned at the beginning of the header
+     * @return an array containing the number of lines and the number of columns, in this order
+     * @throws IOException if the map file could not be read
+     * @throws MapFormatException if the header is not made of two positive integers
+     */
+    private static int[] parseHeader(MapReader reader) throws IOException {
+        int[] values = new int[2];
+        int count = 0;
+        int b = reader.read();
+        while (b >= 0 && b != '\n') {
+            if (b == ' ' || b == '\t' || b == '\r') { b = reader.read(); continue; }
+            if (b < '0' || b > '9' || count == 2)
+                throw new MapFormatException("O cabeçalho do mapa deve conter apenas o número de linhas e o número de colunas");
+            long value = 0;
+            while (b >= '0' && b <= '9') {
+                value = value*10 + (b - '0');
+                if (value > Integer.MAX_VALUE) throw new MapFormatException("O cabeçalho do mapa contém um número grande demais");
+                b = reader.read();
+            }
+            values[count++] = (int) value;
+        }
+        if (count < 2 || values[0] == 0 || values[1] == 0)
+            throw new MapFormatException("O cabeçalho do mapa deve conter o número de linhas e o número de colunas (positivos)");
+        return values;
+    }
+
+    // writes the bytes of a buffer to the end of a channel and empties the buffer
+    private static void write(FileChannel out, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) out.write(buffer);
+        buffer.clear();
+    }
+
+    /**
+     * Carries out a breadth-first search from a given port, one level at a time, until all the other ports have been reached.
+     * @param port the number of the port of reference
+     * @param visited the bits of the cells that are obstacles or have been reached (only the obstacles, at the beginning)
+     * @param current the list that holds the frontier of each level
+     * @param next the list that holds the frontier of the next level
+     * @param metrics where the counters of the search are recorded
+     * @return the distance from the port to each port, or {@link #UNREACHABLE} for the ports that could not be reached
+     */
+    private int[] search(int port, PagedBitFile visited, SpillableLongList current, SpillableLongList next, Instrumentation metrics) {
+        long start = metrics.start();
+        int[] result = new int[MAX_PORTS];
+        Arrays.fill(result, UNREACHABLE);
+        result[port] = 0;
+
+        // the other ports, in increasing order of their vertices, so they are met in the same order as the vertices of a level
+        long[] targets = new long[portsCount - 1];
+        int[] targetPorts = new int[portsCount - 1];
+        int targetsCount = 0;
+        for (int p=0; p<MAX_PORTS; p++) if (portCodes[p] != -1 && p != port) targets[targetsCount++] = portCodes[p];
+        Arrays.sort(targets);
+        for (int i=0; i<targetsCount; i++) {
+            for (int p=0; p<MAX_PORTS; p++) if (portCodes[p] == targets[i]) targetPorts[i] = p;
+        }
+
+        long dequeued = 0, edgesScanned = 0; // only counted when the instrumentation is enabled
+        long peakQueue = 1; // only measured when the instrumentation is enabled
+        int portsLeft = targetsCount;
+        current.clear();
+        current.add(portCodes[port]);
+        visited.set(portCodes[port]);
+        Neighbours[] neighbours = { new Neighbours(NORTH), new Neighbours(WEST), new Neighbours(EAST), new Neighbours(SOUTH) };
+        for (int level=1; current.size() > 0 && portsLeft > 0; level++) {
+            if (Instrumentation.ENABLED) dequeued += current.size();
+            next.clear();
+            for (Neighbours sequence : neighbours) sequence.reset(current);
+            int target = 0;
+            while (true) {
+                // the smallest of the next neighbours of the four sequences
+                Neighbours smallest = neighbours[0];
+                for (int i=1; i<4; i++) if (neighbours[i].head < smallest.head) smallest = neighbours[i];
+                long w = smallest.head;
+                if (w == Long.MAX_VALUE) break; // all four sequences are over
+                smallest.advance();
+                if (Instrumentation.ENABLED) edgesScanned++;
+                if (visited.getAndSet(w)) continue;
+                next.add(w);
+                while (target < targetsCount && targets[target] < w) target++;
+                if (target < targetsCount && targets[target] == w) {
+                    result[targetPorts[target]] = level;
+                    portsLeft--;
+                }
+            }
+            if (Instrumentation.ENABLED && next.size() > peakQueue) peakQueue = next.size();
+            SpillableLongList swap = current;
+            current = next;
+            next = swap;
+        }
+        if (Instrumentation.ENABLED) metrics.recordSearch(port, dequeued, edgesScanned, (int) Math.min(peakQueue, Integer.MAX_VALUE), start);
+        return result;
+    }
+
+    @Override
+    public int getPortsCount() { return portsCount; }
+
+    @Override
+    public int distance(int fromPort, int toPort) {
+        if (fromPort < 0 || fromPort >= MAX_PORTS || portCodes[fromPort] == -1)
+            throw new IllegalArgumentException("port " + fromPort + " is not in the map");
+        if (toPort < 0 || toPort >= MAX_PORTS || portCodes[toPort] == -1)
+            throw new IllegalArgumentException("port " + toPort + " is not in the map");
+        if (fromPort == toPort) return 0;
+        return distances[fromPort] != null ? distances[fromPort][toPort] : distances[toPort][fromPort]; // the distances are symmetric
+    }
+
+    /**
+     * Returns the number of lines of the map.
+     * @return the number of lines
+     */
+    public int getLines() { return lines; }
+
+    /**
+     * Returns the number of columns of the map.
+     * @return the number of columns
+     */
+    public int getColumns() { return columns; }
+
+    /**
+     * The sequence of the neighbours of a frontier in a given direction, which is sorted because the frontier is.
+     */
+    private class Neighbours {
+        private final SpillableLongList.Reader frontier; // the reader of the frontier
+        private final int direction; // NORTH, WEST, EAST or SOUTH
+        private final int offset; // the difference between the code of a neighbour and that of its vertex
+        long head; // the next neighbour of the sequence, or Long.MAX_VALUE if it is over
+
+        Neighbours(int direction) {
+            this.frontier  = new SpillableLongList.Reader(bufferSize / Long.BYTES);
+            this.direction = direction;
+            this.offset    = direction == NORTH ? -columns : direction == WEST ? -1 : direction == EAST ? 1 : columns;
+        }
+
+        // starts the sequence of the neighbours of a frontier, reusing the buffer of the reader
+        void reset(SpillableLongList frontier) {
+            this.frontier.reset(frontier);
+            advance();
+        }
+
+        // moves on to the next vertex of the frontier that has a neighbour in this direction
+        void advance() {
+            while (frontier.hasNext()) {
+                long v = frontier.next();
+                boolean inside;
+                if (direction == WEST)      inside = v % columns != 0;
+                else if (direction == EAST) inside = (v+1) % columns != 0;
+                else                        inside = v + offset >= 0 && v + offset < vertexCount; // the offset is a whole row
+                if (inside) {
+                    head = v + offset;
+                    return;
+                }
+            }
+            head = Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * A reader of the bytes of the map file through a buffer of its own, which is faster than going through a
+     * {@link java.io.BufferedInputStream} one byte at a time.
+     */
+    private static class MapReader {
+        private final InputStream in; // the map file
+        private final byte[] buffer; // the bytes read from the file
+        private int position; // the index of the next byte in the buffer
+        private int limit; // the number of bytes in the buffer
+
+        MapReader(InputStream in, int bufferSize) {
+            this.in     = in;
+            this.buffer = new byte[bufferSize];
+        }
+
+        // returns the next byte of the file without consuming it, or -1 at the end of the file
+        int peek() throws IOException {
+            if (position == limit && !fill()) return -1;
+            return buffer[position] & 0xFF;
+        }
+
+        // returns the next byte of the file, or -1 at the end of the file
+        int read() throws IOException {
+            if (position == limit && !fill()) return -1;
+            return buffer[position++] & 0xFF;
+        }
+
+        // reads more bytes into the buffer, returning false at the end of the file
+        private boolean fill() throws IOException {
+            int count;
+            do count = in.read(buffer); while (count == 0);
+            if (count < 0) return false;
+            position = 0;
+            limit = count;
+            return true;
+        }
+    }
+}
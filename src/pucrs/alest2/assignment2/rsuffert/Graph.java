@@ -1,106 +1,400 @@
 package pucrs.alest2.assignment2.rsuffert;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.nio.charset.Charset;
-import java.nio.file.Files;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
 import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * The {@link Graph} class is the implementation of a graph for the Phoenician problem, based off of Robert Sedgewick's and Kevin Wayne's
- * implementation for a graph of integer vertices, which uses an array of {@link Bag} elements to store the vertices of the graph and the
- * adjacency list of each one of them.
+ * implementation for a graph of integer vertices. Since the map is a grid, the adjacency lists are not materialized: the graph stores the
+ * map as a packed array of cell types (one byte per vertex) and computes the north, south, east and west neighbours of each vertex on the
+ * fly from its row and column.
  * @author Ricardo Süffert
  * @author Robert Sedgewick
  * @author Kevin Wayne
  */
 public class Graph {
-    private static final String NEWLINE = System.getProperty("line.separator");
+    /**
+     * The character that represents an obstacle (a vertex that cannot be navigated) in the map.
+     */
+    public static final char OBSTACLE = '*';
 
     private final int VERTEX_COUNT; // number of vertices in the graph
-    private Bag<Integer>[] adj; // adj[i] contains a list of all the vertices that are adjacent to i
-    private Map<Integer, Character> codeToChar; // maps the integer vertex to its actual character value
-    private Map<Character, Integer> portToCode; // maps the port code (1-9) to its code in the datastructure
+    private final int LINES; // number of lines (rows) in the map
+    private final int COLUMNS; // number of columns in the map
+    private byte[] cells; // cells[i] contains the character value of the vertex i
+    private int[] portCodes; // portCodes[p] contains the code of port p (0-9) in the datastructure, or -1 if the port is not in the map
+    private int portsCount; // number of ports in the map
+    private volatile int[] components; // components[i] contains the connected component of vertex i (-1 for obstacles), built on demand
+    private int componentsCount; // number of connected components in the graph
+    private volatile PortDistanceMatrix portDistances; // distances between the ports, computed on demand (or read from a snapshot)
+    private final Object portDistancesLock = new Object(); // the searches of the matrix label the components, which locks the graph
+    private final Path source; // the map file from which the graph was loaded
+    private final TerrainCosts costs; // the cost of moving into each kind of cell
+    private final boolean fromSnapshot; // whether the graph was loaded from the snapshot of the map file instead of the map file itself
+    private final boolean snapshotDistances; // whether the snapshot the graph was loaded from holds the distances between the ports
+    private int modifications; // number of cells changed since the graph was loaded
      
     /**
      * Constructs an empty graph based on a certain input file, which must conform with the specification for input files for this program.
      * For additional information, check the {@code docs} folder.
      * @param path the string representing the path to the file that contains the map to be converted into a graph
      * @throws IOException if an I/O error occures (for example, if the file could not be read)
+     * @throws MapFormatException if the contents of the file do not conform with the specification for input files (for example, if
+     *                            the size of the grid does not match the header)
      * @throws InvalidPathException if the {@code String} object representing the path (the parameter {@code path}) is {@code null}
      */
-    @SuppressWarnings("all")
     public Graph(String path) throws IOException, InvalidPathException {
+        this(toPath(path), TerrainCosts.UNIFORM);
+    }
+
+    /**
+     * Constructs a graph like {@link #Graph(String)}, in which moving into each kind of cell costs a given amount of fuel.
+     * @param path the string representing the path to the file that contains the map to be converted into a graph
+     * @param costs the cost of moving into each kind of cell
+     * @throws IOException if an I/O error occures (for example, if the file could not be read)
+     * @throws MapFormatException if the contents of the file do not conform with the specification for input files
+     * @throws InvalidPathException if the {@code String} object representing the path (the parameter {@code path}) is {@code null}
+     */
+    public Graph(String path, TerrainCosts costs) throws IOException, InvalidPathException {
+        this(toPath(path), costs);
+    }
+
+    /**
+     * Constructs a graph from a map file, which is always parsed.
+     * @param path the path to the map file
+     * @param costs the cost of moving into each kind of cell
+     * @throws IOException if the file could not be read
+     * @throws MapFormatException if the contents of the file do not conform with the specification for input files
+     */
+    private Graph(Path path, TerrainCosts costs) throws IOException {
+        MapFileParser parser = new MapFileParser(path);
+        this.LINES             = parser.getLines();
+        this.COLUMNS           = parser.getColumns();
+        this.VERTEX_COUNT      = LINES * COLUMNS;
+        this.cells             = parser.getCells();
+        this.portCodes         = parser.getPortCodes();
+        this.portsCount        = parser.getPortsCount();
+        this.source            = path;
+        this.costs             = costs;
+        this.fromSnapshot      = false;
+        this.snapshotDistances = false;
+    }
+
+    /**
+     * Constructs a graph from the snapshot of a map file. The distances between the ports of the snapshot are only used with uniform
+     * costs, since they were computed with them.
+     * @param path the path to the map file
+     * @param snapshot the contents of the snapshot
+     * @param costs the cost of moving into each kind of cell
+     */
+    private Graph(Path path, MapSnapshot snapshot, TerrainCosts costs) {
+        this.LINES             = snapshot.getLines();
+        this.COLUMNS           = snapshot.getColumns();
+        this.VERTEX_COUNT      = LINES * COLUMNS;
+        this.cells             = snapshot.getCells();
+        this.portCodes         = snapshot.getPortCodes();
+        this.portsCount        = snapshot.getPortsCount();
+        this.portDistances     = costs.isUniform() ? snapshot.getDistances() : null;
+        this.source            = path;
+        this.costs             = costs;
+        this.fromSnapshot      = true;
+        this.snapshotDistances = snapshot.getDistances() != null;
+    }
+
+    /**
+     * Loads the graph of a map file, reading it from the binary snapshot of the file (see {@link #writeSnapshot(boolean)}) if there is
+     * one that is up to date, or parsing the file itself otherwise (when there is no snapshot, or the file has changed since the
+     * snapshot was written).
+     * @param path the string representing the path to the file that contains the map
+     * @return the graph of the map
+     * @throws IOException if an I/O error occures (for example, if the file could not be read)
+     * @throws MapFormatException if the map had to be parsed and the contents of the file do not conform with the specification for
+     *                            input files
+     * @throws InvalidPathException if the {@code String} object representing the path (the parameter {@code path}) is {@code null}
+     */
+    public static Graph load(String path) throws IOException, InvalidPathException { return load(path, Instrumentation.DISABLED); }
+
+    /**
+     * Loads the graph of a map file like {@link #load(String)}, recording how long it took as the {@code loadSnapshot} phase if the graph
+     * was read from its snapshot, or as the {@code parse} phase if the map file had to be parsed.
+     * @param path the string representing the path to the file that contains the map
+     * @param metrics where the duration of the loading is recorded
+     * @return the graph of the map
+     * @throws IOException if an I/O error occures (for example, if the file could not be read)
+     * @throws MapFormatException if the map had to be parsed and the contents of the file do not conform with the specification for
+     *                            input files
+     * @throws InvalidPathException if the {@code String} object representing the path (the parameter {@code path}) is {@code null}
+     */
+    public static Graph load(String path, Instrumentation metrics) throws IOException, InvalidPathException {
+        return load(path, TerrainCosts.UNIFORM, metrics);
+    }
+
+    /**
+     * Loads the graph of a map file like {@link #load(String, Instrumentation)}, in which moving into each kind of cell costs a given
+     * amount of fuel.
+     * @param path the string representing the path to the file that contains the map
+     * @param costs the cost of moving into each kind of cell
+     * @param metrics where the duration of the loading is recorded
+     * @return the graph of the map
+     * @throws IOException if an I/O error occures (for example, if the file could not be read)
+     * @throws MapFormatException if the map had to be parsed and the contents of the file do not conform with the specification for
+     *                            input files
+     * @throws InvalidPathException if the {@code String} object representing the path (the parameter {@code path}) is {@code null}
+     */
+    public static Graph load(String path, TerrainCosts costs, Instrumentation metrics) throws IOException, InvalidPathException {
+        long start = metrics.start();
+        Path map = toPath(path);
+        MapSnapshot snapshot = MapSnapshot.read(map, MapSnapshot.pathOf(map));
+        Graph g = snapshot != null ? new Graph(map, snapshot, costs) : new Graph(map, costs);
+        metrics.stop(snapshot != null ? "loadSnapshot" : "parse", start);
+        return g;
+    }
+
+    /**
+     * Writes the binary snapshot of this graph next to the map file it was loaded from (with the {@code .snapshot} extension added to
+     * its name), so that {@link #load(String)} does not need to parse the file again while it does not change.
+     * @param includeDistances whether or not the distances between the ports should also be stored (they are computed if needed); they
+     *                         are never stored if the costs of the graph are not uniform, since the snapshot does not hold the costs
+     * @throws IOException if the snapshot could not be written
+     * @throws IllegalStateException if the graph has been modified (see {@link #setObstacle(int, boolean)}), since the snapshot would
+     *                               no longer match its map file
+     */
+    public void writeSnapshot(boolean includeDistances) throws IOException {
+        if (modifications != 0) throw new IllegalStateException("the graph was modified after being loaded from " + source);
+        MapSnapshot.write(this, source, includeDistances && costs.isUniform() ? getPortDistances() : null);
+    }
+
+    /**
+     * Returns the cost of moving into each kind of cell of this graph.
+     * @return the costs of the graph
+     */
+    public TerrainCosts getTerrainCosts() { return costs; }
+
+    /**
+     * Returns whether or not this graph was read from the snapshot of its map file.
+     * @return {@code true} if the graph was read from a snapshot; {@code false} if its map file was parsed
+     */
+    public boolean isLoadedFromSnapshot() { return fromSnapshot; }
+
+    /**
+     * Returns whether or not this graph was read from a snapshot that holds the distances between its ports, which are only stored by
+     * graphs with uniform costs (see {@link #writeSnapshot(boolean)}).
+     * @return {@code true} if the graph was read from a snapshot with the distances; {@code false} otherwise
+     */
+    public boolean isLoadedWithSnapshotDistances() { return snapshotDistances; }
+
+    /**
+     * Returns the distances between the ports of the map, which are computed by a {@link PortDistanceMatrix} the first time they are
+     * needed (unless they were read from a snapshot). The distances are the costs of the cheapest paths, according to the
+     * {@link TerrainCosts} of the graph (with uniform costs, the number of moves).
+     * @return the distances between the ports of the map
+     */
+    public PortDistances getPortDistances() { return getPortDistances(Instrumentation.DISABLED); }
+
+    /**
+     * Returns the distances between the ports of the map like {@link #getPortDistances()}. If they are computed by this call, the
+     * labelling of the components and the searches are recorded as the {@code components} and {@code searches} phases, along with the
+     * counters of each search.
+     * @param metrics where the phases and the counters are recorded
+     * @return the distances between the ports of the map
+     */
+    public PortDistances getPortDistances(Instrumentation metrics) {
+        PortDistanceMatrix distances = portDistances;
+        if (distances == null) {
+            synchronized (portDistancesLock) {
+                distances = portDistances;
+                if (distances == null) {
+                    long start = metrics.start();
+                    components();
+                    metrics.stop("components", start);
+                    start = metrics.start();
+                    portDistances = distances = new PortDistanceMatrix(this, ForkJoinPool.commonPool(), metrics);
+                    metrics.stop("searches", start);
+                }
+            }
+        }
+        return distances;
+    }
+
+    // converts the string representing the path to a map file to a Path object, rejecting null strings
+    private static Path toPath(String path) throws InvalidPathException {
         if (path == null) throw new InvalidPathException("", "O caminho para o mapa não pode ser nulo");
+        return Paths.get(path.trim());
+    }
 
-        BufferedReader reader = Files.newBufferedReader(Paths.get(path.trim()), Charset.forName("utf8"));
-
-        String line;
-
-        // finding out how many vertices we have
-        line = reader.readLine();
-        String[] linesColumns = line.split(" ");
-        int lines = Integer.parseInt(linesColumns[0]);
-        int columns = Integer.parseInt(linesColumns[1]);
-        this.VERTEX_COUNT = lines * columns;
-
-        // initializing stuff
-        this.adj        = new Bag[VERTEX_COUNT];
-        this.codeToChar = new HashMap<>(VERTEX_COUNT);
-        this.portToCode = new HashMap<>();
-
-        // mapping the nodes of the graph (code -> char value)
-        int sequencer = 0;
-        while ((line = reader.readLine()) != null) { // for each line of input file
-            for (int c=0; c<line.length(); c++) { // for each character in the line (vertex)
-                char vertex = line.charAt(c);
-                int vertexCode = sequencer++;
-                codeToChar.put(vertexCode, vertex); // map the vertex to an integer value
-                if (Character.isDigit(vertex)) { // if the vertex is a port (digit)
-                    portToCode.put(vertex, vertexCode); // map its actual value to its code in the datastructure
-                } 
+    /**
+     * Stores the vertices adjacent to vertex {@code v} (at most four: south, north, east and west, in this order) in the {@code out}
+     * array. This method does not allocate any memory, so it should be preferred over {@link #adj(int)} in hot loops.
+     * @param v the vertex
+     * @param out the array in which the adjacent vertices will be stored (must have room for at least four vertices)
+     * @return how many adjacent vertices were stored in {@code out}
+     */
+    public int neighbours(int v, int[] out) {
+        int count = 0;
+        // the adjacent vertex in a given direction is only valid if it is inside the map and is not an obstacle
+        int column = v % COLUMNS;
+        int south  = v+COLUMNS;
+        int north  = v-COLUMNS;
+        int east   = v+1;
+        int west   = v-1;
+        if (south < VERTEX_COUNT        && cells[south] != OBSTACLE) out[count++] = south;
+        if (north >= 0                  && cells[north] != OBSTACLE) out[count++] = north;
+        if (column < COLUMNS-1          && cells[east]  != OBSTACLE) out[count++] = east;
+        if (column > 0                  && cells[west]  != OBSTACLE) out[count++] = west;
+        return count;
+    }
+
+    /**
+     * Turns a given vertex into an obstacle or into water. Since the adjacency is computed from the cells, only the cell itself changes;
+     * the connected components and the distances between the ports are discarded and computed again when they are next needed.
+     * To keep the distances up to date without computing them again, make the changes through
+     * {@link DynamicPortDistances#setObstacle(int, boolean)} instead.
+     * <p>
+     * This method is not thread-safe, and the engines that copy the cells when they are constructed (such as
+     * {@link BitParallelBreadthFirstSearch}) do not see the change; a {@link SearchCache} drops the results of the graph from before it
+     * (see {@link #getModificationCount()}).
+     * @param v the vertex
+     * @param obstacle {@code true} to turn {@code v} into an obstacle; {@code false} to turn it into water
+     * @return {@code true} if the vertex has changed; {@code false} if it already was as requested
+     * @throws IllegalArgumentException unless {@code 0 <= v < V}, or if {@code v} is a port and {@code obstacle} is {@code true}
+     */
+    public boolean setObstacle(int v, boolean obstacle) {
+        validateVertex(v);
+        if (obstacle && getPortNumber(v) != -1) throw new IllegalArgumentException("vertex " + v + " is a port and cannot be an obstacle");
+        if (isNavigable(v) != obstacle) return false;
+        cells[v]      = obstacle ? (byte) OBSTACLE : (byte) '.';
+        components    = null;
+        portDistances = null;
+        modifications++;
+        return true;
+    }
+
+    /**
+     * Returns whether or not any cell of this graph has been changed since it was loaded.
+     * @return {@code true} if the graph has been modified; {@code false} if it still matches its map file
+     */
+    public boolean isModified() { return modifications != 0; }
+
+    /**
+     * Returns the number of cells changed by {@link #setObstacle(int, boolean)} since this graph was loaded, which tells whether the
+     * results of a search over the graph were computed before its last change.
+     * @return the number of modifications of the graph
+     */
+    public int getModificationCount() { return modifications; }
+
+    /**
+     * Returns whether or not a given vertex can be navigated (i.e., is not an obstacle).
+     * @param v the vertex
+     * @return {@code true} if {@code v} is not an obstacle; {@code false} otherwise
+     */
+    public boolean isNavigable(int v) { return cells[v] != OBSTACLE; }
+
+    /**
+     * Returns the connected component of a given vertex. Two vertices are in the same component if, and only if, there is a path between
+     * them, so this method answers reachability questions in constant time. The components are labelled the first time they are needed.
+     * @param v the vertex
+     * @return the component of {@code v} (between 0 and {@link #getComponentsCount()}-1), or -1 if {@code v} is an obstacle
+     */
+    public int getComponent(int v) { return components()[v]; }
+
+    /**
+     * Returns whether or not there is a path between two vertices.
+     * @param v a vertex
+     * @param w another vertex
+     * @return {@code true} if {@code v} and {@code w} are navigable and there is a path between them; {@code false} otherwise
+     */
+    public boolean areConnected(int v, int w) {
+        int[] labels = components();
+        return labels[v] != -1 && labels[v] == labels[w];
+    }
+
+    /**
+     * Returns the number of connected components of navigable vertices in the graph.
+     * @return the number of connected components
+     */
+    public int getComponentsCount() {
+        components();
+        return componentsCount;
+    }
+
+    // returns the component labels, labelling the components in the first call
+    private int[] components() {
+        int[] labels = components;
+        if (labels == null) {
+            synchronized (this) {
+                labels = components;
+                if (labels == null) components = labels = labelComponents();
             }
         }
+        return labels;
+    }
 
-        reader.close();
-        fillAdj(columns);
-    }
-
-    /**
-     * Fills the adjacency list of each vertex.
-     * @param nColumns the number of columns in the map
-     */
-    private void fillAdj(int nColumns) {
-        final int FIRST_IN_LAST_ROW   = VERTEX_COUNT-nColumns;
-        final int FIRST_IN_SECOND_ROW = nColumns;
-        for (int v=0; v<VERTEX_COUNT; v++) { // for each vertex in the bag array
-            adj[v] = new Bag<>();
-            // theoretically, the four vertices adjacent to the vertex in the bag array could be found as follows
-            int south = v+nColumns;
-            int north = v-nColumns;
-            int east  = v+1;
-            int west  = v-1;
-
-            // but not all vertices have adjacents, so we have to figure out which adjacent vertices the current vertex has
-            // and add only those which are valid to the adjacency list (also discard '*' vertices, which are not valid)
-            int currentRow        = v / nColumns;
-            int firstInNextRow    = currentRow * nColumns + nColumns;
-            int firstInCurrentRow = firstInNextRow - nColumns;
-            boolean validSouth = (v < FIRST_IN_LAST_ROW)    && (codeToChar.get(south) != '*');
-            boolean validNorth = (v >= FIRST_IN_SECOND_ROW) && (codeToChar.get(north) != '*');
-            boolean validEast  = (v < firstInNextRow-1)     && (codeToChar.get(east) != '*');
-            boolean validWest  = (v > firstInCurrentRow)    && (codeToChar.get(west) != '*');
-
-            if (validSouth) adj[v].add(south);
-            if (validNorth) adj[v].add(north);
-            if (validEast)  adj[v].add(east);
-            if (validWest)  adj[v].add(west);
+    /**
+     * Labels the connected components of the graph with a union-find pass over the grid, joining each navigable vertex with its
+     * navigable northern and western neighbours, followed by a pass that numbers the components in order of their first vertex. On large
+     * maps, the union-find pass runs in parallel over bands of rows (see {@link MapFileParser#bandsCount(int, int)}), each band only
+     * touching its own vertices, and the bands are then joined along the rows where they meet.
+     * @return the component of each vertex, or -1 for obstacles
+     */
+    private int[] labelComponents() {
+        int[] parent = new int[VERTEX_COUNT];
+        int bands = MapFileParser.bandsCount(LINES, COLUMNS);
+        if (bands == 1) joinRows(parent, 0, LINES);
+        else {
+            MapFileParser.runBands(LINES, bands, (band, fromRow, toRow) -> joinRows(parent, fromRow, toRow));
+            for (int band=1; band<bands; band++) {
+                int first = MapFileParser.bandStart(LINES, bands, band) * COLUMNS;
+                for (int v=first; v<first+COLUMNS; v++)
+                    if (isNavigable(v) && isNavigable(v-COLUMNS)) union(parent, v, v-COLUMNS);
+            }
+        }
+
+        // the root of each component is its smallest vertex, so it is numbered before the other vertices of the component
+        int[] labels = new int[VERTEX_COUNT];
+        int count = 0;
+        for (int v=0; v<VERTEX_COUNT; v++) {
+            if (parent[v] == -1) labels[v] = -1;
+            else {
+                int root = find(parent, v);
+                labels[v] = root == v ? count++ : labels[root];
+            }
         }
+        componentsCount = count;
+        return labels;
+    }
+
+    // starts the sets of the vertices of a range of rows, joining each one with its western neighbour and, but in the first row of the
+    // range, with its northern neighbour
+    private void joinRows(int[] parent, int fromRow, int toRow) {
+        int first = fromRow * COLUMNS;
+        for (int v=first; v<toRow*COLUMNS; v++) {
+            if (!isNavigable(v)) { parent[v] = -1; continue; }
+            parent[v] = v;
+            if (v % COLUMNS > 0 && isNavigable(v-1)) union(parent, v, v-1);
+            if (v >= first+COLUMNS && isNavigable(v-COLUMNS)) union(parent, v, v-COLUMNS);
+        }
+    }
+
+    // joins the sets of two vertices, keeping the smaller root as the root of the joined set
+    private static void union(int[] parent, int v, int w) {
+        int rootV = find(parent, v);
+        int rootW = find(parent, w);
+        if (rootV < rootW) parent[rootW] = rootV;
+        else if (rootW < rootV) parent[rootV] = rootW;
+    }
+
+    // returns the root of the set of a vertex, halving the path along the way
+    private static int find(int[] parent, int v) {
+        while (parent[v] != v) {
+            parent[v] = parent[parent[v]];
+            v = parent[v];
+        }
+        return v;
     }
 
     /**
@@ -108,7 +402,10 @@ public class Graph {
      * @param code the vertex code
      * @return the character associated with {@code code}, or {@code null} if there isn't any character associated with it
      */
-    public Character translateVertexCode(int code) { return codeToChar.get(code); }
+    public Character translateVertexCode(int code) { 
+        if (code < 0 || code >= VERTEX_COUNT) return null;
+        return (char) cells[code];
+    }
 
     /**
      * Translates a given port number to its respective code in the graph datastructure.
@@ -117,31 +414,61 @@ public class Graph {
      *         or {@code null} if the port is not in the graph
      */
     public Integer translatePortToCode(int portNumber) { 
-        char characterPortNumber = Character.forDigit(portNumber, 10);
-        return portToCode.get(characterPortNumber); 
+        if (portNumber < 0 || portNumber >= portCodes.length || portCodes[portNumber] == -1) return null;
+        return portCodes[portNumber]; 
     }
 
+    /**
+     * Returns the number of the port represented by a given vertex.
+     * @param v the vertex code
+     * @return the number of the port (0-9) if {@code v} is a port; -1 otherwise
+     */
+    public int getPortNumber(int v) {
+        int port = cells[v] - '0';
+        return port >= 0 && port <= 9 ? port : -1;
+    }
+
+    // returns the cells of the map, which must not be modified
+    byte[] getCells() { return cells; }
+
     /**
      * Returns how many ports there are in the map.
      * @return the number of ports in the map
      */
-    public int getPortsCount() { return portToCode.size(); }
+    public int getPortsCount() { return portsCount; }
  
     /**
      * Returns the number of vertices in this graph.
      * @return the number of vertices in this graph
      */
     public int getVertexCount() { return VERTEX_COUNT; }
+
+    /**
+     * Returns the number of lines (rows) in the map represented by this graph.
+     * @return the number of lines in the map
+     */
+    public int getLines() { return LINES; }
+
+    /**
+     * Returns the number of columns in the map represented by this graph.
+     * @return the number of columns in the map
+     */
+    public int getColumns() { return COLUMNS; }
  
     /**
-     * Returns the vertices adjacent to vertex {@code v}.
+     * Returns the vertices adjacent to vertex {@code v}. The adjacency list is built on demand, so this method is kept for compatibility
+     * only; see {@link #neighbours(int, int[])}.
      * @param  v the vertex
      * @return the vertices adjacent to vertex {@code v}, as an iterable
      * @throws IllegalArgumentException unless {@code 0 <= v < V}
      */
     public Iterable<Integer> adj(int v) {
         validateVertex(v);
-        return adj[v];
+        int[] adjacent = new int[4];
+        int count = neighbours(v, adjacent);
+        Bag<Integer> bag = new Bag<>();
+        for (int i=0; i<count; i++) bag.add(adjacent[i]);
+        return bag;
     }
 
     // throw an IllegalArgumentException unless {@code 0 <= v < V}
@@ -151,44 +478,33 @@ public class Graph {
     }
  
     /**
-     * Returns a string representation of this graph.
+     * Returns a string representation of this graph. The whole representation is held in memory, so large maps should be written with
+     * {@link GraphExporter#writeAdjacencyLists(java.io.Writer)} instead.
      * @return the number of vertices <em>V</em>, followed by the number of edges <em>E</em>,
      *         followed by the <em>V</em> adjacency lists
      */
     public String toString() {
-        StringBuilder s = new StringBuilder();
-        s.append(VERTEX_COUNT + " vertices" + NEWLINE);
-        for (int v = 0; v < VERTEX_COUNT; v++) {
-            s.append(v + ": ");
-            for (int w : adj[v]) {
-                s.append(w + " ");
-            }
-            s.append(NEWLINE);
+        StringWriter s = new StringWriter();
+        try {
+            new GraphExporter(this).writeAdjacencyLists(s);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // a StringWriter does not throw
         }
         return s.toString();
     }
      
     /**
-     * Returns this graph as an input for GraphViz (dot format).
+     * Returns this graph as an input for GraphViz (dot format). The whole representation is held in memory, so large maps should be
+     * written with {@link GraphExporter#writeDot(java.io.Writer)} instead.
      * @return dot graph representation
      */    
     public String toDot() {
-        // Uses a set of edges to prevent duplicates
-        Set<String> edges = new HashSet<>();
-        StringBuilder s = new StringBuilder();
-        s.append("graph {"+NEWLINE);
-        s.append("rankdir = LR;"+NEWLINE);
-        s.append("node [shape = circle];"+NEWLINE);
-        for (int v = 0; v < VERTEX_COUNT; v++) {
-            for (int w : adj[v]) {
-                String edge = Math.min(v,w)+"-"+Math.max(v, w);
-                if(!edges.contains(edge)) {
-                    s.append(v + " -- " + w + ";"+NEWLINE);
-                    edges.add(edge);
-                }
-            }
+        StringWriter s = new StringWriter();
+        try {
+            new GraphExporter(this).writeDot(s);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // a StringWriter does not throw
         }
-        s.append("}");
         return s.toString();
     }
 }
@@ -0,0 +1,193 @@
+package pucrs.alest2.assignment2.rsuffert;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+
+/**
+ * The {@link GraphExporter} class writes a map graph to a stream in formats meant for other tools: GraphViz (dot), a plain edge list, the
+ * adjacency lists of {@link Graph#toString()}, and a compressed binary adjacency format. Every format is written while the vertices are
+ * visited in order, straight to the stream, so the memory used does not depend on the size of the map. Each edge of the grid is written
+ * once without remembering which ones have been written: it is only written from its northern or western end (that is, each vertex
+ * only writes its edges to the south and to the east).
+ * <p>
+ * The edges are those between two navigable vertices that are next to each other. The streams are neither buffered nor closed by the
+ * methods of this class, so they should be buffered by the caller.
+ * @author Ricardo Süffert
+ */
+public class GraphExporter {
+    private static final String NEWLINE = System.getProperty("line.separator");
+
+    /**
+     * The first four bytes of the compressed adjacency format ({@code "PHXA"}).
+     */
+    public static final int COMPRESSED_MAGIC = 0x50485841;
+
+    /**
+     * The version of the compressed adjacency format.
+     */
+    public static final int COMPRESSED_VERSION = 1;
+
+    private static final int BUFFER_SIZE = 1 << 16; // bytes of the compressed format written to the stream at once
+
+    private final Graph g; // the map graph
+
+    /**
+     * Constructs an exporter of a given map graph.
+     * @param g the map graph
+     */
+    public GraphExporter(Graph g) { this.g = g; }
+
+    /**
+     * Returns the number of edges of the graph, counting each edge between two navigable vertices once.
+     * @return the number of edges
+     */
+    public long countEdges() {
+        int columns = g.getColumns(), vertexCount = g.getVertexCount();
+        long edges = 0;
+        for (int v=0; v<vertexCount; v++) {
+            if (!g.isNavigable(v)) continue;
+            if (v % columns < columns-1 && g.isNavigable(v+1))       edges++;
+            if (v + columns < vertexCount && g.isNavigable(v+columns)) edges++;
+        }
+        return edges;
+    }
+
+    /**
+     * Writes the graph as an input for GraphViz (dot format), with one line per edge (the one to the east of each vertex before the one
+     * to the south). The output is the same as the one of {@link Graph#toDot()}.
+     * @param out the stream
+     * @throws IOException if the stream could not be written
+     */
+    public void writeDot(Writer out) throws IOException {
+        out.write("graph {" + NEWLINE);
+        out.write("rankdir = LR;" + NEWLINE);
+        out.write("node [shape = circle];" + NEWLINE);
+        writeEdges(out, " -- ", ";" + NEWLINE);
+        out.write("}");
+    }
+
+    /**
+     * Writes the graph as a plain edge list, in the format of the input files of Robert Sedgewick's and Kevin Wayne's {@code Graph}: the
+     * number of vertices, the number of edges and then one edge per line, as its two vertices separated by a space. Since the number of
+     * edges comes first, the graph is visited twice.
+     * @param out the stream
+     * @throws IOException if the stream could not be written
+     */
+    public void writeEdgeList(Writer out) throws IOException {
+        out.write(g.getVertexCount() + NEWLINE);
+        out.write(countEdges() + NEWLINE);
+        writeEdges(out, " ", NEWLINE);
+    }
+
+    // writes each edge as its northern or western vertex, a separator, its other vertex and a terminator
+    private void writeEdges(Writer out, String separator, String terminator) throws IOException {
+        int columns = g.getColumns(), vertexCount = g.getVertexCount();
+        for (int v=0; v<vertexCount; v++) {
+            if (!g.isNavigable(v)) continue;
+            int east = v + 1, south = v + columns;
+            if (v % columns < columns-1 && g.isNavigable(east)) {
+                out.write(Integer.toString(v));
+                out.write(separator);
+                out.write(Integer.toString(east));
+                out.write(terminator);
+            }
+            if (south < vertexCount && g.isNavigable(south)) {
+                out.write(Integer.toString(v));
+                out.write(separator);
+                out.write(Integer.toString(south));
+                out.write(terminator);
+            }
+        }
+    }
+
+    /**
+     * Writes the adjacency list of each vertex, after the number of vertices, in the format of {@link Graph#toString()} (whose output is
+     * the same): each line holds a vertex, a colon and the vertices of {@link Graph#adj(int)}, in the same order.
+     * @param out the stream
+     * @throws IOException if the stream could not be written
+     */
+    public void writeAdjacencyLists(Writer out) throws IOException {
+        int vertexCount = g.getVertexCount();
+        int[] adjacent = new int[4];
+        out.write(vertexCount + " vertices" + NEWLINE);
+        for (int v=0; v<vertexCount; v++) {
+            out.write(Integer.toString(v));
+            out.write(": ");
+            for (int i=g.neighbours(v, adjacent)-1; i>=0; i--) { // adj(v) lists the neighbours backwards
+                out.write(Integer.toString(adjacent[i]));
+                out.write(' ');
+            }
+            out.write(NEWLINE);
+        }
+    }
+
+    /**
+     * Writes the graph in a compressed binary adjacency format. The header is made of {@link #COMPRESSED_MAGIC},
+     * {@link #COMPRESSED_VERSION}, the number of lines and the number of columns of the map (as big-endian {@code int}s) and the number of
+     * edges (as a big-endian {@code long}). Then, for each vertex in order, come its degree and the difference between each of its
+     * neighbours (south, north, east and west, in this order) and itself, all of them as variable-length integers (seven bits per byte,
+     * least significant first, with the high bit set on every byte but the last); the differences are zigzag-encoded, so that a
+     * difference {@code d} is stored as {@code 2d} if it is positive and {@code -2d-1} otherwise. Obstacles have no neighbours.
+     * @param out the stream
+     * @throws IOException if the stream could not be written
+     */
+    public void writeCompressedAdjacency(OutputStream out) throws IOException {
+        int vertexCount = g.getVertexCount();
+        int[] adjacent = new int[4];
+        CompressedOutput compressed = new CompressedOutput(out);
+        compressed.writeInt(COMPRESSED_MAGIC);
+        compressed.writeInt(COMPRESSED_VERSION);
+        compressed.writeInt(g.getLines());
+        compressed.writeInt(g.getColumns());
+        compressed.writeLong(countEdges());
+        for (int v=0; v<vertexCount; v++) {
+            int degree = g.isNavigable(v) ? g.neighbours(v, adjacent) : 0;
+            compressed.writeVarInt(degree);
+            for (int i=0; i<degree; i++) {
+                int difference = adjacent[i] - v;
+                compressed.writeVarInt((difference << 1) ^ (difference >> 31));
+            }
+        }
+        compressed.flush();
+    }
+
+    /**
+     * A fixed buffer of the compressed adjacency format, written to the stream whenever it fills up.
+     */
+    private static class CompressedOutput {
+        private final OutputStream out; // the stream
+        private final byte[] buffer = new byte[BUFFER_SIZE]; // bytes not yet written to the stream
+        private int count; // number of bytes in the buffer
+
+        CompressedOutput(OutputStream out) { this.out = out; }
+
+        void writeInt(int value) throws IOException {
+            for (int shift=24; shift>=0; shift-=8) writeByte(value >>> shift);
+        }
+
+        void writeLong(long value) throws IOException {
+            writeInt((int) (value >>> 32));
+            writeInt((int) value);
+        }
+
+        // writes an unsigned value, seven bits at a time
+        void writeVarInt(int value) throws IOException {
+            while ((value & ~0x7F) != 0) {
+                writeByte((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            writeByte(value);
+        }
+
+        void writeByte(int value) throws IOException {
+            if (count == buffer.length) flush();
+            buffer[count++] = (byte) value;
+        }
+
+        void flush() throws IOException {
+            out.write(buffer, 0, count);
+            count = 0;
+        }
+    }
+}
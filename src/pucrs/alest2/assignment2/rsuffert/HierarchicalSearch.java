@@ -0,0 +1,374 @@
+package pucrs.alest2.assignment2.rsuffert;
+
+import java.util.Arrays;
+
+/**
+ * The {@link HierarchicalSearch} class implements a point-to-point search in the style of HPA* (hierarchical path-finding A*): the map is
+ * split into square tiles, and the search runs on a small abstract graph whose vertices are the entrances of the tiles, instead of on
+ * the grid itself.
+ * <p>
+ * The preprocessing, done once by the constructor, finds the entrances of every tile (the navigable cells on its border that have a
+ * navigable neighbour in another tile) and the distance, inside the tile, between every pair of entrances of the same tile. The abstract
+ * graph has an edge of length one between entrances on both sides of a border, and an edge between every pair of entrances of the same
+ * tile, whose length is their distance inside the tile. A query searches the tiles of the source and the target to connect them to
+ * their entrances, and then runs A* (with the Manhattan distance as the heuristic) on the abstract graph.
+ * <p>
+ * Unlike the usual HPA*, which keeps one entrance per stretch of border and is therefore approximate, every cell that crosses a border
+ * is an entrance. Any path is a sequence of stretches inside single tiles joined by border crossings, and each stretch is at least as
+ * long as the distance inside its tile between its ends, so the distances are <em>exactly</em> those of a breadth-first search. The
+ * price is memory: the distances inside a tile take about {@code 32 * tileSize} bytes per cell of its border. {@link #route(int, int)}
+ * refines the abstract route into the cells of the map, searching again only the tiles it goes through.
+ * <p>
+ * Like {@link BreadthFirstSearchEngine}, an instance is meant to be allocated once per {@link Graph} and reused; it is not thread-safe,
+ * and it does not see the changes made to the graph after it was constructed. The preprocessing is only read by the queries, so the
+ * searches run by several threads at the same time can share it, each one with an instance made by
+ * {@link #HierarchicalSearch(HierarchicalSearch)}, which only allocates the state of the queries.
+ * @author Ricardo Süffert
+ */
+public class HierarchicalSearch implements PointToPointSearch {
+    /**
+     * The default length of the side of a tile.
+     */
+    public static final int DEFAULT_TILE_SIZE = 32;
+
+    private static final int INFINITY = Integer.MAX_VALUE; // distance of the vertices that cannot be reached
+    private static final char NO_PATH = Character.MAX_VALUE; // distance between entrances that are not connected inside their tile
+
+    private final Graph g; // the base graph
+    private final int lines; // number of lines (rows) in the map
+    private final int columns; // number of columns in the map
+    private final int tileSize; // length of the side of a tile
+    private final int tilesPerRow; // number of tiles in each row of tiles
+    private final int[] nodeOfVertex; // nodeOfVertex[v] is the abstract vertex of the entrance v, or -1 if v is not an entrance
+    private final int[] vertexOfNode; // vertexOfNode[u] is the vertex of the map of the abstract vertex u
+    private final int[] firstNodeOfTile; // the abstract vertices of tile k are those from firstNodeOfTile[k] to firstNodeOfTile[k+1]-1
+    private final char[][] intraTile; // intraTile[k][i*n+j] is the distance, inside tile k, between its i-th and j-th entrances
+
+    private final int[] distTo; // stores the best known distance from the source to the abstract vertex represented by the index
+    private final int[] edgeTo; // stores the abstract vertex that led to the abstract vertex represented by the index (-1 for the source)
+    private final int[] seenIn; // stores the epoch of the last search that reached the abstract vertex represented by the index
+    private final IntMinHeap open = new IntMinHeap(1024); // abstract vertices to be expanded, ordered by their priority (see AStarSearch)
+    private final int[] toTarget; // distance, inside the tile of the target, from each of its entrances to the target
+    private final int[] adjacent = new int[4]; // buffer for the vertices adjacent to a vertex (at most four in a grid)
+    private int epoch; // number of the current search
+    private int target; // target vertex of the current search
+    private int lastBestNode; // last abstract vertex of the shortest route found by the last search (-1 if it stays in one tile)
+
+    private final int[] tileDistTo; // distance from the reference vertex of the last search inside a tile, by local index
+    private final int[] tileEdgeTo; // local index of the cell that led to the cell represented by the local index
+    private final int[] tileSeenIn; // stores the epoch of the last search inside a tile that reached the cell of the local index
+    private final int[] tileQueue; // cells of the search inside a tile whose adjacents need to be visited
+    private final boolean[] tileNavigable; // whether or not the cell of the local index of the loaded tile is navigable
+    private int loadedTile = -1; // the tile whose cells are in tileNavigable
+    private int loadedHeight; // number of lines of the loaded tile (smaller than tileSize at the bottom of the map)
+    private int loadedWidth; // number of columns of the loaded tile (smaller than tileSize at the right of the map)
+    private int tileEpoch; // number of the current search inside a tile
+
+    /**
+     * Preprocesses a given graph with tiles of {@link #DEFAULT_TILE_SIZE} cells of side.
+     * @param g the base graph
+     */
+    public HierarchicalSearch(Graph g) { this(g, DEFAULT_TILE_SIZE); }
+
+    /**
+     * Preprocesses a given graph with tiles of a given size.
+     * @param g the base graph
+     * @param tileSize the length of the side of a tile (between 2 and 255)
+     * @throws IllegalArgumentException if the size of the tiles is out of range
+     */
+    public HierarchicalSearch(Graph g, int tileSize) {
+        if (tileSize < 2 || tileSize > 255) throw new IllegalArgumentException("tileSize must be between 2 and 255");
+        this.g           = g;
+        this.lines       = g.getLines();
+        this.columns     = g.getColumns();
+        this.tileSize    = tileSize;
+        this.tilesPerRow = (columns + tileSize - 1) / tileSize;
+        int tilesCount   = tilesPerRow * ((lines + tileSize - 1) / tileSize);
+
+        this.tileDistTo = new int[tileSize * tileSize];
+        this.tileEdgeTo = new int[tileSize * tileSize];
+        this.tileSeenIn = new int[tileSize * tileSize];
+        this.tileQueue  = new int[tileSize * tileSize];
+        this.tileNavigable = new boolean[tileSize * tileSize];
+
+        // number the entrances tile by tile, so the entrances of a tile are consecutive
+        this.nodeOfVertex    = new int[g.getVertexCount()];
+        this.firstNodeOfTile = new int[tilesCount + 1];
+        Arrays.fill(nodeOfVertex, -1);
+        int[] entrances = new int[64];
+        int nodesCount = 0, maxPerTile = 0;
+        for (int tile=0; tile<tilesCount; tile++) {
+            firstNodeOfTile[tile] = nodesCount;
+            int firstRow = tile / tilesPerRow * tileSize, firstColumn = tile % tilesPerRow * tileSize;
+            int lastRow = Math.min(firstRow + tileSize, lines) - 1, lastColumn = Math.min(firstColumn + tileSize, columns) - 1;
+            for (int row=firstRow; row<=lastRow; row++) {
+                for (int column=firstColumn; column<=lastColumn; column++) {
+                    if (row != firstRow && row != lastRow && column != firstColumn && column != lastColumn) continue; // not on the border
+                    int v = row*columns + column;
+                    if (!isEntrance(v, tile)) continue;
+                    if (nodesCount == entrances.length) entrances = Arrays.copyOf(entrances, nodesCount*2);
+                    nodeOfVertex[v] = nodesCount;
+                    entrances[nodesCount++] = v;
+                }
+            }
+            maxPerTile = Math.max(maxPerTile, nodesCount - firstNodeOfTile[tile]);
+        }
+        firstNodeOfTile[tilesCount] = nodesCount;
+        this.vertexOfNode = Arrays.copyOf(entrances, nodesCount);
+
+        // the distances between the entrances of each tile, with one search inside the tile per entrance
+        this.intraTile = new char[tilesCount][];
+        for (int tile=0; tile<tilesCount; tile++) {
+            int first = firstNodeOfTile[tile], n = firstNodeOfTile[tile+1] - first;
+            char[] distances = new char[n * n];
+            for (int i=0; i<n; i++) {
+                searchTile(vertexOfNode[first + i], tile);
+                for (int j=0; j<n; j++) {
+                    int distance = tileDistance(vertexOfNode[first + j]);
+                    distances[i*n + j] = distance == INFINITY ? NO_PATH : (char) distance;
+                }
+            }
+            intraTile[tile] = distances;
+        }
+
+        this.distTo   = new int[nodesCount];
+        this.edgeTo   = new int[nodesCount];
+        this.seenIn   = new int[nodesCount];
+        this.toTarget = new int[maxPerTile];
+    }
+
+    /**
+     * Constructs a search that shares the preprocessing (the tiles, their entrances and the distances inside them) of another search of
+     * the same graph, without repeating it. The two searches may be used by different threads at the same time.
+     * @param preprocessed the search whose preprocessing is shared
+     */
+    public HierarchicalSearch(HierarchicalSearch preprocessed) {
+        this.g               = preprocessed.g;
+        this.lines           = preprocessed.lines;
+        this.columns         = preprocessed.columns;
+        this.tileSize        = preprocessed.tileSize;
+        this.tilesPerRow     = preprocessed.tilesPerRow;
+        this.nodeOfVertex    = preprocessed.nodeOfVertex;
+        this.vertexOfNode    = preprocessed.vertexOfNode;
+        this.firstNodeOfTile = preprocessed.firstNodeOfTile;
+        this.intraTile       = preprocessed.intraTile;
+
+        this.tileDistTo = new int[tileSize * tileSize];
+        this.tileEdgeTo = new int[tileSize * tileSize];
+        this.tileSeenIn = new int[tileSize * tileSize];
+        this.tileQueue  = new int[tileSize * tileSize];
+        this.tileNavigable = new boolean[tileSize * tileSize];
+        this.distTo   = new int[vertexOfNode.length];
+        this.edgeTo   = new int[vertexOfNode.length];
+        this.seenIn   = new int[vertexOfNode.length];
+        this.toTarget = new int[preprocessed.toTarget.length];
+    }
+
+    // returns whether or not a vertex of the border of a tile is navigable and has a navigable neighbour in another tile
+    private boolean isEntrance(int v, int tile) {
+        if (!g.isNavigable(v)) return false;
+        int adjacentCount = g.neighbours(v, adjacent);
+        for (int i=0; i<adjacentCount; i++) if (tileOf(adjacent[i]) != tile) return true;
+        return false;
+    }
+
+    // returns the tile of a vertex
+    private int tileOf(int v) { return (v / columns / tileSize) * tilesPerRow + (v % columns) / tileSize; }
+
+    // returns the index of a vertex inside its tile
+    private int localIndex(int v) { return (v / columns % tileSize) * tileSize + (v % columns) % tileSize; }
+
+    /**
+     * Carries out a breadth-first search that does not leave a given tile. The results are read with {@link #tileDistance(int)}.
+     * @param s the reference vertex, which must be in the tile
+     * @param tile the tile
+     */
+    private void searchTile(int s, int tile) {
+        if (tile != loadedTile) loadTile(tile);
+        if (++tileEpoch == Integer.MAX_VALUE) { // the stamps would become ambiguous, so clear them
+            Arrays.fill(tileSeenIn, 0);
+            tileEpoch = 1;
+        }
+        // the search works on the local indices of the tile, whose neighbours are found without dividing by the width of the map
+        int head = 0, tail = 0, source = localIndex(s);
+        tileQueue[tail++] = source;
+        tileSeenIn[source] = tileEpoch;
+        tileDistTo[source] = 0;
+        tileEdgeTo[source] = -1;
+        while (head < tail) {
+            int v = tileQueue[head++];
+            int row = v / tileSize, column = v % tileSize;
+            if (row+1 < loadedHeight)    tail = visitTile(v, v + tileSize, tail);
+            if (row > 0)                 tail = visitTile(v, v - tileSize, tail);
+            if (column+1 < loadedWidth)  tail = visitTile(v, v + 1, tail);
+            if (column > 0)              tail = visitTile(v, v - 1, tail);
+        }
+    }
+
+    // adds a cell adjacent to a cell of the current search inside a tile to its queue, if navigable and not reached yet
+    private int visitTile(int v, int w, int tail) {
+        if (!tileNavigable[w] || tileSeenIn[w] == tileEpoch) return tail;
+        tileSeenIn[w] = tileEpoch;
+        tileDistTo[w] = tileDistTo[v] + 1;
+        tileEdgeTo[w] = v;
+        tileQueue[tail] = w;
+        return tail + 1;
+    }
+
+    // copies which cells of a tile are navigable, by local index, for the searches inside the tile
+    private void loadTile(int tile) {
+        int firstRow = tile / tilesPerRow * tileSize, firstColumn = tile % tilesPerRow * tileSize;
+        loadedHeight = Math.min(tileSize, lines - firstRow);
+        loadedWidth  = Math.min(tileSize, columns - firstColumn);
+        for (int row=0; row<loadedHeight; row++) {
+            for (int column=0; column<loadedWidth; column++)
+                tileNavigable[row*tileSize + column] = g.isNavigable((firstRow + row)*columns + firstColumn + column);
+        }
+        loadedTile = tile;
+    }
+
+    // returns the distance of a vertex of the tile of the last search inside a tile, or INFINITY if it was not reached
+    private int tileDistance(int v) { return tileSeenIn[localIndex(v)] == tileEpoch ? tileDistTo[localIndex(v)] : INFINITY; }
+
+    /**
+     * Returns the length of the shortest path from a source vertex to a target vertex.
+     * @param s the source vertex
+     * @param t the target vertex
+     * @return the distance from {@code s} to {@code t}, or {@link #UNREACHABLE} if there isn't a path from {@code s} to {@code t}
+     */
+    @Override
+    public int distance(int s, int t) {
+        if (s == t) return 0;
+        if (!g.areConnected(s, t)) return UNREACHABLE;
+        int distance = search(s, t);
+        return distance == INFINITY ? UNREACHABLE : distance;
+    }
+
+    /**
+     * Returns a shortest path from a source vertex to a target vertex, refining the route found on the abstract graph: the stretches
+     * between consecutive entrances of the same tile are found by searching that tile only.
+     * @param s the source vertex
+     * @param t the target vertex
+     * @return the vertices of the path, from {@code s} to {@code t}, or {@code null} if there isn't a path from {@code s} to {@code t}
+     */
+    public int[] route(int s, int t) {
+        if (s == t) return new int[] {s};
+        if (!g.areConnected(s, t) || search(s, t) == INFINITY) return null;
+
+        // the waypoints of the route: the source, the entrances of the abstract route and the target
+        int hops = 0;
+        for (int u = lastBestNode; u != -1; u = edgeTo[u]) hops++;
+        int[] waypoints = new int[hops + 2];
+        waypoints[0] = s;
+        waypoints[hops + 1] = t;
+        for (int u = lastBestNode, i = hops; u != -1; u = edgeTo[u], i--) waypoints[i] = vertexOfNode[u];
+
+        int[] path = new int[64];
+        int length = 0;
+        path[length++] = s;
+        for (int i=1; i<waypoints.length; i++) {
+            int from = waypoints[i-1], to = waypoints[i];
+            if (from == to) continue;
+            int tile = tileOf(from);
+            if (tileOf(to) != tile) { // a border crossing
+                if (length == path.length) path = Arrays.copyOf(path, length*2);
+                path[length++] = to;
+                continue;
+            }
+            // a stretch inside a tile: search it from the end, so following the edges leads from "from" to "to"
+            searchTile(to, tile);
+            int firstRow = tile / tilesPerRow * tileSize, firstColumn = tile % tilesPerRow * tileSize;
+            for (int local = tileEdgeTo[localIndex(from)]; local != -1; local = tileEdgeTo[local]) {
+                if (length == path.length) path = Arrays.copyOf(path, length*2);
+                path[length++] = (firstRow + local / tileSize) * columns + firstColumn + local % tileSize;
+            }
+        }
+        return Arrays.copyOf(path, length);
+    }
+
+    /**
+     * Searches the abstract graph for the shortest path from a source vertex to a target vertex, leaving the last abstract vertex of
+     * the route in {@link #lastBestNode} and the others in {@link #edgeTo}.
+     * @param s the source vertex
+     * @param t the target vertex
+     * @return the distance from {@code s} to {@code t}, or {@link #INFINITY} if there isn't a path from {@code s} to {@code t}
+     */
+    private int search(int s, int t) {
+        if (++epoch == Integer.MAX_VALUE) { // the stamps would become ambiguous, so clear them
+            Arrays.fill(seenIn, 0);
+            epoch = 1;
+        }
+        this.target = t;
+        int sourceTile = tileOf(s), targetTile = tileOf(t);
+
+        // connect the target to the entrances of its tile
+        searchTile(t, targetTile);
+        int targetFirst = firstNodeOfTile[targetTile], targetCount = firstNodeOfTile[targetTile+1] - targetFirst;
+        for (int i=0; i<targetCount; i++) toTarget[i] = tileDistance(vertexOfNode[targetFirst + i]);
+
+        // connect the source to the entrances of its tile (and to the target, if they share a tile)
+        searchTile(s, sourceTile);
+        int best = sourceTile == targetTile ? tileDistance(t) : INFINITY;
+        lastBestNode = -1;
+        open.clear();
+        for (int u=firstNodeOfTile[sourceTile]; u<firstNodeOfTile[sourceTile+1]; u++) {
+            int distance = tileDistance(vertexOfNode[u]);
+            if (distance != INFINITY) relax(u, distance, -1);
+        }
+
+        while (!open.isEmpty()) {
+            long key = open.peekKey();
+            int u = open.pop();
+            int v = vertexOfNode[u];
+            int estimate = manhattan(v, t);
+            if (key != AStarSearch.priority(distTo[u], estimate)) continue; // outdated entry
+            if (distTo[u] + estimate >= best) break; // no route through the remaining vertices can be shorter
+            int tile = tileOf(v);
+            if (tile == targetTile && toTarget[u - targetFirst] != INFINITY && distTo[u] + toTarget[u - targetFirst] < best) {
+                best = distTo[u] + toTarget[u - targetFirst];
+                lastBestNode = u;
+            }
+
+            // the other entrances of the same tile
+            int first = firstNodeOfTile[tile], n = firstNodeOfTile[tile+1] - first, i = u - first;
+            char[] distances = intraTile[tile];
+            for (int j=0; j<n; j++) {
+                char distance = distances[i*n + j];
+                if (j != i && distance != NO_PATH) relax(first + j, distTo[u] + distance, u);
+            }
+            // the entrances on the other side of the border
+            int adjacentCount = g.neighbours(v, adjacent);
+            for (int a=0; a<adjacentCount; a++) {
+                int w = adjacent[a];
+                if (tileOf(w) != tile) relax(nodeOfVertex[w], distTo[u] + 1, u);
+            }
+        }
+        return best;
+    }
+
+    // updates the distance of an abstract vertex, adding it to the open list if it has been improved
+    private void relax(int u, int distance, int from) {
+        if (seenIn[u] == epoch && distance >= distTo[u]) return;
+        seenIn[u] = epoch;
+        distTo[u] = distance;
+        edgeTo[u] = from;
+        open.push(AStarSearch.priority(distance, manhattan(vertexOfNode[u], target)), u);
+    }
+
+    // returns the Manhattan distance between two vertices
+    private int manhattan(int v, int w) {
+        return Math.abs(v / columns - w / columns) + Math.abs(v % columns - w % columns);
+    }
+
+    /**
+     * Returns the number of vertices of the abstract graph (the entrances of all the tiles).
+     * @return the number of entrances
+     */
+    public int getEntrancesCount() { return vertexOfNode.length; }
+
+    /**
+     * Returns the length of the side of the tiles.
+     * @return the size of the tiles
+     */
+    public int getTileSize() { return tileSize; }
+}
@@ -0,0 +1,217 @@
+package pucrs.alest2.assignment2.rsuffert;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The {@link Instrumentation} class collects the metrics of the solution of a single map: how long each phase took (loading the map,
+ * labelling its components, searching from the ports and travelling), the counters of each search from a port (vertices dequeued,
+ * edges scanned and peak size of the queue) and the distance and duration of each leg of the voyage. The metrics can be exported as
+ * JSON with {@link #toJson()}, and each search and each leg is also committed as a Java Flight Recorder event, so they show up in any
+ * recording that enables the {@code pucrs.alest2.*} events.
+ * <p>
+ * The instrumentation is turned on with the {@code -Dphoenician.instrumentation=true} system property. Since {@link #ENABLED} is a
+ * constant, the JIT compiler removes the counters from the searches when it is off, and {@link #forMap(String)} returns an instance that
+ * records nothing. Instances are thread-safe, as the searches from the ports run concurrently.
+ * @author Ricardo Süffert
+ */
+public final class Instrumentation {
+    /**
+     * Whether or not the instrumentation is turned on, as set by the {@code phoenician.instrumentation} system property.
+     */
+    public static final boolean ENABLED = Boolean.getBoolean("phoenician.instrumentation");
+
+    /**
+     * An instance that records nothing, used when the instrumentation is turned off or no metrics are wanted.
+     */
+    public static final Instrumentation DISABLED = new Instrumentation(null);
+
+    private final String map; // the map the metrics refer to (null for the disabled instance)
+    private final Map<String, Long> phases = new LinkedHashMap<>(); // duration of each phase, in nanoseconds, in the order they ended
+    private final List<long[]> searches = new ArrayList<>(); // port, vertices dequeued, edges scanned, peak queue and duration of each search
+    private final List<long[]> legs = new ArrayList<>(); // origin, destination, distance and duration of each leg
+
+    static {
+        if (ENABLED) { // loading the event classes registers them with JFR, which would otherwise be timed as part of the first search
+            new SearchEvent().shouldCommit();
+            new LegEvent().shouldCommit();
+        }
+    }
+
+    private Instrumentation(String map) { this.map = map; }
+
+    /**
+     * Returns the instance that collects the metrics of a given map, or {@link #DISABLED} if the instrumentation is turned off.
+     * @param map the name of the map (for example, the path to its file)
+     * @return the instance that collects the metrics of {@code map}
+     */
+    public static Instrumentation forMap(String map) { return ENABLED ? new Instrumentation(map) : DISABLED; }
+
+    /**
+     * Returns whether or not this instance records metrics.
+     * @return {@code true} if the metrics are recorded; {@code false} if they are discarded
+     */
+    public boolean isRecording() { return map != null; }
+
+    /**
+     * Marks the beginning of a phase.
+     * @return the timestamp to be passed to {@link #stop(String, long)} (0 if this instance does not record metrics)
+     */
+    public long start() { return isRecording() ? System.nanoTime() : 0; }
+
+    /**
+     * Marks the end of a phase, adding its duration to the phases of the same name that ended before.
+     * @param phase the name of the phase
+     * @param start the timestamp returned by {@link #start()} when the phase began
+     */
+    public void stop(String phase, long start) {
+        if (!isRecording()) return;
+        long elapsed = System.nanoTime() - start;
+        synchronized (this) { phases.merge(phase, elapsed, Long::sum); }
+    }
+
+    /**
+     * Records the counters of a search from a port.
+     * @param port the number of the port the search started from
+     * @param dequeued the number of vertices removed from the queue
+     * @param edgesScanned the number of edges examined
+     * @param peakQueue the largest number of vertices in the queue at the same time
+     * @param start the timestamp returned by {@link #start()} when the search began
+     */
+    void recordSearch(int port, long dequeued, long edgesScanned, int peakQueue, long start) {
+        if (!isRecording()) return;
+        long elapsed = System.nanoTime() - start;
+        synchronized (this) { searches.add(new long[] {port, dequeued, edgesScanned, peakQueue, elapsed}); }
+
+        SearchEvent event = new SearchEvent();
+        event.map          = map;
+        event.port         = port;
+        event.dequeued     = dequeued;
+        event.edgesScanned = edgesScanned;
+        event.peakQueue    = peakQueue;
+        event.nanos        = elapsed;
+        event.commit();
+    }
+
+    /**
+     * Records a leg of the voyage.
+     * @param from the number of the port of origin
+     * @param to the number of the port of destination
+     * @param distance the distance of the leg, or {@link PortDistances#UNREACHABLE} if the destination could not be reached
+     * @param start the timestamp returned by {@link #start()} when the distance of the leg started to be computed
+     */
+    void recordLeg(int from, int to, int distance, long start) {
+        if (!isRecording()) return;
+        long elapsed = System.nanoTime() - start;
+        synchronized (this) { legs.add(new long[] {from, to, distance, elapsed}); }
+
+        LegEvent event = new LegEvent();
+        event.map      = map;
+        event.from     = from;
+        event.to       = to;
+        event.distance = distance;
+        event.nanos    = elapsed;
+        event.commit();
+    }
+
+    /**
+     * Returns the metrics as a JSON object, with the durations in milliseconds:
+     * <pre>
+     * {"map": "...", "phases": {"parse": 1.5, ...},
+     *  "searches": [{"port": 1, "dequeued": 10, "edgesScanned": 30, "peakQueue": 4, "ms": 0.1}, ...],
+     *  "legs": [{"from": 1, "to": 2, "distance": 8, "ms": 0.0}, ...]}
+     * </pre>
+     * @return the metrics as JSON, or {@code null} if this instance does not record metrics
+     */
+    public synchronized String toJson() {
+        if (!isRecording()) return null;
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"map\": ").append(quote(map)).append(", \"phases\": {");
+        String separator = "";
+        for (Map.Entry<String, Long> phase : phases.entrySet()) {
+            sb.append(separator).append(quote(phase.getKey())).append(": ").append(milliseconds(phase.getValue()));
+            separator = ", ";
+        }
+        sb.append("}, \"searches\": [");
+        separator = "";
+        for (long[] s : searches) {
+            sb.append(separator).append(String.format(Locale.ROOT,
+                      "{\"port\": %d, \"dequeued\": %d, \"edgesScanned\": %d, \"peakQueue\": %d, \"ms\": %s}",
+                      s[0], s[1], s[2], s[3], milliseconds(s[4])));
+            separator = ", ";
+        }
+        sb.append("], \"legs\": [");
+        separator = "";
+        for (long[] l : legs) {
+            sb.append(separator).append(String.format(Locale.ROOT, "{\"from\": %d, \"to\": %d, \"distance\": %d, \"ms\": %s}",
+                                                      l[0], l[1], l[2], milliseconds(l[3])));
+            separator = ", ";
+        }
+        return sb.append("]}").toString();
+    }
+
+    // formats a duration in nanoseconds as milliseconds
+    private static String milliseconds(long nanos) { return String.format(Locale.ROOT, "%.3f", nanos / 1e6); }
+
+    // returns a string as a JSON string literal
+    static String quote(String s) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (int i=0; i<s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') sb.append('\\').append(c);
+            else if (c < 0x20)         sb.append(String.format("\\u%04x", (int) c));
+            else                       sb.append(c);
+        }
+        return sb.append('"').toString();
+    }
+
+    /**
+     * The JFR event committed for each search from a port.
+     */
+    @Name("pucrs.alest2.PortSearch")
+    @Label("Port Search")
+    @Category("Phoenician Problem")
+    @Description("A breadth-first search from a port to the other ports of its component")
+    static class SearchEvent extends Event {
+        @Label("Map")
+        String map;
+        @Label("Port")
+        int port;
+        @Label("Vertices Dequeued")
+        long dequeued;
+        @Label("Edges Scanned")
+        long edgesScanned;
+        @Label("Peak Queue Size")
+        int peakQueue;
+        @Label("Duration (ns)")
+        long nanos;
+    }
+
+    /**
+     * The JFR event committed for each leg of the voyage.
+     */
+    @Name("pucrs.alest2.Leg")
+    @Label("Voyage Leg")
+    @Category("Phoenician Problem")
+    @Description("A leg of the voyage between two ports")
+    static class LegEvent extends Event {
+        @Label("Map")
+        String map;
+        @Label("From Port")
+        int from;
+        @Label("To Port")
+        int to;
+        @Label("Distance")
+        int distance;
+        @Label("Duration (ns)")
+        long nanos;
+    }
+}
@@ -0,0 +1,81 @@
+package pucrs.alest2.assignment2.rsuffert;
+
+import java.util.Arrays;
+
+/**
+ * The {@link IntMinHeap} class implements a binary min-heap of {@code int} values ordered by {@code long} keys, kept in two parallel
+ * primitive arrays, so that the searches that need a priority queue do not box their vertices. Duplicated values are allowed: the
+ * searches push a vertex again when its key improves and skip the outdated entries when they are removed.
+ * @author Ricardo Süffert
+ */
+class IntMinHeap {
+    private long[] keys; // keys[i] is the key of the i-th entry of the heap
+    private int[] values; // values[i] is the value of the i-th entry of the heap
+    private int size; // number of entries in the heap
+
+    /**
+     * Constructs an empty heap.
+     * @param capacity the initial capacity of the heap (it grows as needed)
+     */
+    IntMinHeap(int capacity) {
+        this.keys   = new long[Math.max(1, capacity)];
+        this.values = new int[Math.max(1, capacity)];
+    }
+
+    boolean isEmpty() { return size == 0; }
+
+    int size() { return size; }
+
+    void clear() { size = 0; }
+
+    /**
+     * Adds an entry to the heap.
+     * @param key the key of the entry
+     * @param value the value of the entry
+     */
+    void push(long key, int value) {
+        if (size == keys.length) {
+            keys   = Arrays.copyOf(keys, size*2);
+            values = Arrays.copyOf(values, size*2);
+        }
+        int i = size++;
+        while (i > 0) { // sift up
+            int parent = (i-1) >>> 1;
+            if (keys[parent] <= key) break;
+            keys[i]   = keys[parent];
+            values[i] = values[parent];
+            i = parent;
+        }
+        keys[i]   = key;
+        values[i] = value;
+    }
+
+    /**
+     * Returns the smallest key in the heap.
+     * @return the key of the entry at the top of the heap (the heap must not be empty)
+     */
+    long peekKey() { return keys[0]; }
+
+    /**
+     * Removes the entry with the smallest key from the heap.
+     * @return the value of the removed entry (the heap must not be empty)
+     */
+    int pop() {
+        int top = values[0];
+        long key  = keys[--size];
+        int value = values[size];
+        int i = 0;
+        while (true) { // sift down
+            int child = 2*i + 1;
+            if (child >= size) break;
+            if (child+1 < size && keys[child+1] < keys[child]) child++;
+            if (keys[child] >= key) break;
+            keys[i]   = keys[child];
+            values[i] = values[child];
+            i = child;
+        }
+        keys[i]   = key;
+        values[i] = value;
+        return top;
+    }
+}
@@ -0,0 +1,181 @@
+package pucrs.alest2.assignment2.rsuffert;
+
+import java.util.Arrays;
+
+/**
+ * The {@link JumpPointSearch} class implements Jump Point Search for the four-connected, uniform-cost grid maps of the Phoenician
+ * problem. It is an A* search (with the Manhattan distance as the heuristic) that, instead of adding every neighbour of a vertex to the
+ * open list, jumps in a straight line over the cells that have an equally short path that does not go through them, and only stops at
+ * the "jump points" where a path may need to turn. Long stretches of open water are therefore crossed without being expanded.
+ * <p>
+ * Among the shortest paths, the canonical ones are those that move vertically first: a vertical movement may turn east or west in any
+ * cell, while a horizontal movement may only turn north or south right after passing an obstacle (a "forced" turn). Hence:
+ * <ul>
+ * <li>a horizontal jump stops at the target or at a cell with a forced turn, i.e., whose northern (or southern) neighbour is navigable
+ * although the northern (or southern) neighbour of the previous cell is an obstacle;</li>
+ * <li>a vertical jump stops at the target or at a cell from which a horizontal jump, east or west, finds a jump point.</li>
+ * </ul>
+ * The distances are the same as those of a breadth-first search. Like {@link BreadthFirstSearchEngine}, an instance is meant to be
+ * allocated once per {@link Graph} and reused; it is not thread-safe.
+ * @author Ricardo Süffert
+ */
+public class JumpPointSearch implements PointToPointSearch {
+    private static final int NORTH = 1, SOUTH = 2, EAST = 4, WEST = 8; // directions, which may be combined as a bitmask
+    private static final int ALL_DIRECTIONS = NORTH | SOUTH | EAST | WEST;
+
+    private final Graph g; // the base graph
+    private final int lines; // number of lines (rows) in the map
+    private final int columns; // number of columns in the map
+    private final int[] seenIn; // stores the epoch of the last search that reached the vertex represented by the index in the array
+    private final int[] distTo; // stores the best known distance from the source to the vertex represented by the index in the array
+    private final byte[] directions; // directions in which the search must jump from the vertex represented by the index in the array
+    private final byte[] jumped; // directions in which the search has already jumped from the vertex represented by the index in the array
+    private final IntMinHeap open; // jump points to be expanded, ordered by their priority (see AStarSearch)
+    private int epoch; // number of the current search
+    private int target; // target vertex of the current search
+
+    /**
+     * Constructs a Jump Point Search for a given graph.
+     * @param g the base graph
+     */
+    public JumpPointSearch(Graph g) {
+        this.g          = g;
+        this.lines      = g.getLines();
+        this.columns    = g.getColumns();
+        this.seenIn     = new int[g.getVertexCount()];
+        this.distTo     = new int[g.getVertexCount()];
+        this.directions = new byte[g.getVertexCount()];
+        this.jumped     = new byte[g.getVertexCount()];
+        this.open       = new IntMinHeap(1024);
+    }
+
+    /**
+     * Returns the length of the shortest path from a source vertex to a target vertex.
+     * @param s the source vertex
+     * @param t the target vertex
+     * @return the distance from {@code s} to {@code t}, or {@link #UNREACHABLE} if there isn't a path from {@code s} to {@code t}
+     */
+    @Override
+    public int distance(int s, int t) {
+        if (s == t) return 0;
+        if (!g.isNavigable(t)) return UNREACHABLE;
+        if (++epoch == Integer.MAX_VALUE) { // the stamps would become ambiguous, so clear them
+            Arrays.fill(seenIn, 0);
+            epoch = 1;
+        }
+        this.target = t;
+
+        open.clear();
+        seenIn[s] = epoch;
+        distTo[s] = 0;
+        directions[s] = ALL_DIRECTIONS;
+        jumped[s] = 0;
+        open.push(AStarSearch.priority(0, manhattan(s, t)), s);
+        while (!open.isEmpty()) {
+            long key = open.peekKey();
+            int v = open.pop();
+            // skip outdated entries of vertices that were reached again through a shorter path
+            if (key != AStarSearch.priority(distTo[v], manhattan(v, t))) continue;
+            if (v == t) return distTo[v]; // the heuristic is consistent, so the distance of an expanded vertex is final
+            int pending = directions[v] & ~jumped[v];
+            if (pending == 0) continue; // outdated entry: the vertex has already been expanded in these directions
+            jumped[v] |= pending;
+
+            int row = v / columns, column = v % columns;
+            if ((pending & NORTH) != 0) relax(v, jumpVertically(row, column, -1), NORTH);
+            if ((pending & SOUTH) != 0) relax(v, jumpVertically(row, column, +1), SOUTH);
+            if ((pending & EAST)  != 0) relax(v, jumpHorizontally(row, column, +1), EAST);
+            if ((pending & WEST)  != 0) relax(v, jumpHorizontally(row, column, -1), WEST);
+        }
+        return UNREACHABLE;
+    }
+
+    /**
+     * Updates the distance of a jump point found from a given vertex, adding it to the open list if it has been improved or if it must
+     * now be expanded in more directions.
+     * @param v the vertex from which the jump started
+     * @param w the jump point, or -1 if the jump did not find any
+     * @param direction the direction of the jump
+     */
+    private void relax(int v, int w, int direction) {
+        if (w == -1) return;
+        int distance = distTo[v] + manhattan(v, w); // the jump is a straight line
+        int next = directionsAfter(w, direction);
+        if (seenIn[w] != epoch || distance < distTo[w]) {
+            seenIn[w] = epoch;
+            distTo[w] = distance;
+            directions[w] = (byte) next;
+            jumped[w] = 0;
+        } else if (distance == distTo[w] && (next & ~directions[w]) != 0) {
+            // reached again through a path that is just as short, but from which the canonical paths continue in other directions
+            directions[w] |= next;
+        } else return;
+        open.push(AStarSearch.priority(distance, manhattan(w, target)), w);
+    }
+
+    /**
+     * Returns the directions in which the canonical paths continue from a jump point that was reached moving in a given direction.
+     * @param w the jump point
+     * @param direction the direction of the movement that reached {@code w}
+     * @return the directions in which the search must jump from {@code w}, as a bitmask
+     */
+    private int directionsAfter(int w, int direction) {
+        if (direction == NORTH || direction == SOUTH) return direction | EAST | WEST;
+        int row = w / columns, column = w % columns;
+        int behind = direction == EAST ? column-1 : column+1;
+        int next = direction;
+        if (isForced(row-1, column, behind)) next |= NORTH;
+        if (isForced(row+1, column, behind)) next |= SOUTH;
+        return next;
+    }
+
+    /**
+     * Jumps horizontally from a cell until a jump point is found.
+     * @param row the row of the cell
+     * @param column the column of the cell
+     * @param step +1 to jump to the east, -1 to jump to the west
+     * @return the jump point, or -1 if an obstacle or the edge of the map was found first
+     */
+    private int jumpHorizontally(int row, int column, int step) {
+        while (true) {
+            int behind = column;
+            column += step;
+            if (!isNavigable(row, column)) return -1;
+            int v = row*columns + column;
+            if (v == target) return v;
+            if (isForced(row-1, column, behind) || isForced(row+1, column, behind)) return v;
+        }
+    }
+
+    /**
+     * Jumps vertically from a cell until a jump point is found.
+     * @param row the row of the cell
+     * @param column the column of the cell
+     * @param step +1 to jump to the south, -1 to jump to the north
+     * @return the jump point, or -1 if an obstacle or the edge of the map was found first
+     */
+    private int jumpVertically(int row, int column, int step) {
+        while (true) {
+            row += step;
+            if (!isNavigable(row, column)) return -1;
+            int v = row*columns + column;
+            if (v == target) return v;
+            if (jumpHorizontally(row, column, +1) != -1 || jumpHorizontally(row, column, -1) != -1) return v;
+        }
+    }
+
+    // returns whether or not a horizontal movement that passes from column "behind" to column "column" may turn to the given row
+    private boolean isForced(int row, int column, int behind) {
+        return isNavigable(row, column) && !isNavigable(row, behind);
+    }
+
+    // returns whether or not a cell is inside the map and is not an obstacle
+    private boolean isNavigable(int row, int column) {
+        return row >= 0 && row < lines && column >= 0 && column < columns && g.isNavigable(row*columns + column);
+    }
+
+    // returns the Manhattan distance between two vertices
+    private int manhattan(int v, int w) {
+        return Math.abs(v / columns - w / columns) + Math.abs(v % columns - w % columns);
+    }
+}
@@ -0,0 +1,294 @@
+package pucrs.alest2.assignment2.rsuffert;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The {@link MapFileParser} class reads a map file into a packed array of cells. The file is memory-mapped and its bytes are copied
+ * straight into the cell array, row by row, without being decoded into {@code String}s; the positions of the ports are recorded in the
+ * same pass. Both {@code LF} and {@code CRLF} line terminators are accepted. Large maps are split into bands of rows, which are parsed in
+ * parallel (see {@link #bandsCount(int, int)}).
+ * @author Ricardo Süffert
+ */
+class MapFileParser {
+    private static final byte LF = '\n';
+    private static final byte CR = '\r';
+    private static final byte[] KINDS = new byte[256]; // KINDS[b] is p+1 if the byte b is port p, -1 if it is a line terminator, else 0
+    private static final long PARALLEL_THRESHOLD = 1 << 20; // number of cells from which the rows are parsed in parallel
+
+    static {
+        for (int b=0; b<KINDS.length; b++) if (isLineTerminator(b)) KINDS[b] = -1;
+        for (int p=0; p<10; p++) KINDS['0'+p] = (byte) (p+1);
+    }
+
+    private final int lines; // number of lines (rows) in the map
+    private final int columns; // number of columns in the map
+    private final byte[] cells; // cells[i] contains the character value of the vertex i
+    private final int[] portCodes; // portCodes[p] contains the vertex code of port p, or -1 if there is no such port
+    private int portsCount; // number of distinct ports in the map
+
+    /**
+     * Parses the map file in the given path.
+     * @param path the path to the map file
+     * @throws IOException if the file could not be read
+     * @throws MapFormatException if the contents of the file do not conform with the specification for input files
+     */
+    MapFileParser(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE)
+                throw new MapFormatException(String.format("O arquivo do mapa é grande demais (%d bytes)", size));
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            int limit = (int) size;
+
+            // skip the UTF-8 byte order mark, if there is one
+            int position = 0;
+            if (limit >= 3 && buffer.get(0) == (byte) 0xEF && buffer.get(1) == (byte) 0xBB && buffer.get(2) == (byte) 0xBF) position = 3;
+
+            // parsing the header ("lines columns")
+            int headerEnd = position;
+            while (headerEnd < limit && buffer.get(headerEnd) != LF) headerEnd++;
+            int[] header = parseHeader(buffer, position, headerEnd);
+            this.lines   = header[0];
+            this.columns = header[1];
+            int vertexCount;
+            try {
+                vertexCount = Math.multiplyExact(lines, columns);
+            } catch (ArithmeticException e) {
+                throw new MapFormatException(String.format("O mapa indicado no cabeçalho (%d x %d) é grande demais", lines, columns));
+            }
+
+            this.cells     = new byte[vertexCount];
+            this.portCodes = new int[10];
+            Arrays.fill(portCodes, -1);
+
+            // copying each row of the grid straight into the cell array, in bands of rows parsed in parallel if the map is large
+            int gridStart = headerEnd + 1;
+            position = parseBands(buffer, gridStart, limit);
+            if (position < 0) { // a small map, or one whose rows are not all alike: errors are found (and reported) in order
+                Arrays.fill(portCodes, -1);
+                position = parseRows(buffer, 0, lines, gridStart, limit, portCodes);
+            }
+            for (int code : portCodes) if (code != -1) portsCount++;
+
+            // only blank lines may follow the grid
+            for (int i=position; i<limit; i++) {
+                byte b = buffer.get(i);
+                if (b != LF && b != CR && b != ' ' && b != '\t')
+                    throw new MapFormatException(String.format("O mapa possui mais linhas do que as %d indicadas no cabeçalho", lines));
+            }
+        }
+    }
+
+    /**
+     * Parses the rows of the grid in bands, one task per band on the common {@link ForkJoinPool}. Since the header gives the size of the
+     * grid, each band can find its first row on its own, assuming that every row is followed by the same line terminator as the first
+     * one; if a band did not start where the previous one ended (or found any error), nothing is reported here, and the caller parses
+     * the grid again in order.
+     * @param buffer the buffer that contains the map file
+     * @param gridStart the index of the first byte of the grid
+     * @param limit the size of the file
+     * @return the index of the first byte after the grid, or -1 if the grid must be parsed in order
+     */
+    private int parseBands(MappedByteBuffer buffer, int gridStart, int limit) {
+        int bands = bandsCount(lines, columns);
+        if (bands == 1) return -1;
+        int terminatorLength = terminatorAt(buffer, gridStart + columns, limit);
+        if (terminatorLength <= 0) return -1;
+        long stride = columns + terminatorLength;
+        if (gridStart + (lines-1) * stride > limit) return -1; // the file is too short for the header
+
+        int[][] bandPortCodes = new int[bands][];
+        int[] starts = new int[bands];
+        int[] ends = new int[bands];
+        runBands(lines, bands, (band, fromRow, toRow) -> {
+            int[] ports = new int[10];
+            Arrays.fill(ports, -1);
+            starts[band] = (int) (gridStart + fromRow * stride);
+            try {
+                ends[band] = parseRows(buffer.duplicate(), fromRow, toRow, starts[band], limit, ports);
+            } catch (MapFormatException e) {
+                ends[band] = -1;
+            }
+            bandPortCodes[band] = ports;
+        });
+
+        for (int band=0; band<bands; band++) {
+            // each band must have started right where the previous one ended
+            if (ends[band] < 0 || (band+1 < bands && ends[band] != starts[band+1])) return -1;
+            for (int p=0; p<10; p++) if (bandPortCodes[band][p] != -1) portCodes[p] = bandPortCodes[band][p]; // the last one prevails
+        }
+        return ends[bands-1];
+    }
+
+    /**
+     * Copies a range of rows of the grid into the cell array, recording the last position of each port among them.
+     * @param buffer the buffer that contains the map file
+     * @param fromRow the first row of the range
+     * @param toRow the row after the last row of the range
+     * @param position the index of the first byte of {@code fromRow}
+     * @param limit the size of the file
+     * @param ports where the vertex code of each port found is recorded
+     * @return the index of the first byte after the range
+     * @throws MapFormatException if a row does not have the number of columns given by the header (a line terminator is never taken as a
+     *                            cell), or the file ends before the range
+     */
+    private int parseRows(MappedByteBuffer buffer, int fromRow, int toRow, int position, int limit, int[] ports)
+            throws MapFormatException {
+        for (int row=fromRow; row<toRow; row++) {
+            if (position >= limit)
+                throw new MapFormatException(String.format("O mapa possui %d linha(s), mas o cabeçalho indica %d", row, lines));
+            int rowEnd = position + columns;
+            int terminatorLength = terminatorAt(buffer, rowEnd, limit);
+            if (terminatorLength < 0)
+                throw new MapFormatException(String.format("A linha %d do mapa possui %d coluna(s), mas o cabeçalho indica %d",
+                                                           row+1, rowLength(buffer, position, limit), columns));
+            int firstInRow = row * columns;
+            buffer.get(position, cells, firstInRow, columns);
+            for (int c=firstInRow; c<firstInRow+columns; c++) { // record the ports of this row
+                byte kind = KINDS[cells[c] & 0xFF];
+                if (kind == 0) continue; // an ordinary cell
+                if (kind < 0) // a shorter row, whose terminator was copied along (e.g. the CR before the LF found above)
+                    throw new MapFormatException(String.format("A linha %d do mapa possui %d coluna(s), mas o cabeçalho indica %d",
+                                                               row+1, rowLength(buffer, position, limit), columns));
+                ports[kind-1] = c;
+            }
+            position = rowEnd + terminatorLength;
+        }
+        return position;
+    }
+
+    /**
+     * Returns the number of bands the rows of a grid are split into to be processed in parallel: one if the grid is small or the common
+     * {@link ForkJoinPool} has a single thread, and a few per thread otherwise, so that uneven bands do not leave threads idle.
+     * @param lines the number of rows of the grid
+     * @param columns the number of columns of the grid
+     * @return the number of bands
+     */
+    static int bandsCount(int lines, int columns) {
+        int parallelism = ForkJoinPool.getCommonPoolParallelism();
+        if (parallelism < 2 || (long) lines * columns < PARALLEL_THRESHOLD) return 1;
+        return Math.min(lines, 4 * parallelism);
+    }
+
+    /**
+     * Runs a task for each band of rows of a grid on the common {@link ForkJoinPool}, and waits for all of them.
+     * @param lines the number of rows of the grid
+     * @param bands the number of bands (see {@link #bandsCount(int, int)})
+     * @param task the task
+     */
+    static void runBands(int lines, int bands, BandTask task) {
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(bands);
+        for (int b=0; b<bands; b++) {
+            final int band = b;
+            tasks.add(ForkJoinTask.adapt(() -> task.run(band, bandStart(lines, bands, band), bandStart(lines, bands, band+1))));
+        }
+        ForkJoinPool.commonPool().invoke(new RecursiveAction() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected void compute() { invokeAll(tasks); }
+        });
+    }
+
+    /**
+     * Returns the first row of a band of rows of a grid.
+     * @param lines the number of rows of the grid
+     * @param bands the number of bands
+     * @param band the band, or {@code bands} for the row after the grid
+     * @return the first row of the band
+     */
+    static int bandStart(int lines, int bands, int band) { return (int) ((long) lines * band / bands); }
+
+    /**
+     * A task run on a band of rows of a grid.
+     */
+    @FunctionalInterface
+    interface BandTask {
+        /**
+         * Processes a band of rows.
+         * @param band the number of the band, from 0
+         * @param fromRow the first row of the band
+         * @param toRow the row after the last row of the band
+         */
+        void run(int band, int fromRow, int toRow);
+    }
+
+    /**
+     * Parses the header of the map file, which contains the number of lines and the number of columns of the map.
+     * @param buffer the buffer that contains the map file
+     * @param from the index of the first byte of the header
+     * @param to the index of the line feed that ends the header (exclusive)
+     * @return an array containing the number of lines and the number of columns, in this order
+     * @throws MapFormatException if the header is not made of two positive integers
+     */
+    private static int[] parseHeader(MappedByteBuffer buffer, int from, int to) throws MapFormatException {
+        int[] values = new int[2];
+        int count = 0;
+        int i = from;
+        while (i < to) {
+            byte b = buffer.get(i);
+            if (b == ' ' || b == '\t' || b == CR) { i++; continue; }
+            if (b < '0' || b > '9' || count == 2)
+                throw new MapFormatException("O cabeçalho do mapa deve conter apenas o número de linhas e o número de colunas");
+            long value = 0;
+            while (i < to && (b = buffer.get(i)) >= '0' && b <= '9') {
+                value = value*10 + (b - '0');
+                if (value > Integer.MAX_VALUE) throw new MapFormatException("O cabeçalho do mapa contém um número grande demais");
+                i++;
+            }
+            values[count++] = (int) value;
+        }
+        if (count < 2 || values[0] == 0 || values[1] == 0)
+            throw new MapFormatException("O cabeçalho do mapa deve conter o número de linhas e o número de colunas (positivos)");
+        return values;
+    }
+
+    /**
+     * Returns the length of the line terminator at a given index of the buffer.
+     * @return 0 at the end of the file, 1 for {@code LF}, 2 for {@code CRLF}, or -1 if there is no line terminator at {@code index}
+     */
+    private static int terminatorAt(MappedByteBuffer buffer, int index, int limit) {
+        if (index > limit) return -1;
+        if (index == limit) return 0;
+        byte b = buffer.get(index);
+        if (b == LF) return 1;
+        if (b == CR && (index+1 == limit || buffer.get(index+1) == LF)) return index+1 == limit ? 1 : 2;
+        return -1;
+    }
+
+    /**
+     * Returns whether or not a byte of a map file belongs to a line terminator ({@code LF} or {@code CRLF}), which may not be a cell of
+     * the grid. Both this parser and the out-of-core one ({@link ExternalPortDistances}) reject the rows that contain one.
+     * @param b the byte
+     * @return {@code true} if the byte is {@code CR} or {@code LF}
+     */
+    static boolean isLineTerminator(int b) { return b == CR || b == LF; }
+
+    // returns the length of the line starting at a given index of the buffer, excluding its terminator
+    private static int rowLength(MappedByteBuffer buffer, int from, int limit) {
+        int i = from;
+        while (i < limit && buffer.get(i) != LF) i++;
+        if (i > from && buffer.get(i-1) == CR) i--;
+        return i - from;
+    }
+
+    int getLines() { return lines; }
+
+    int getColumns() { return columns; }
+
+    byte[] getCells() { return cells; }
+
+    int[] getPortCodes() { return portCodes; }
+
+    int getPortsCount() { return portsCount; }
+}
@@ -0,0 +1,18 @@
+package pucrs.alest2.assignment2.rsuffert;
+
+import java.io.IOException;
+
+/**
+ * The {@link MapFormatException} class represents an error in the contents of a map file, i.e., a file that could be read but that does
+ * not conform with the specification for input files for this program (for example, if its header does not match the size of the grid).
+ * @author Ricardo Süffert
+ */
+public class MapFormatException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Constructs a new exception with the given detail message.
+     * @param message the message that describes what is wrong with the map file
+     */
+    public MapFormatException(String message) { super(message); }
+}
@@ -0,0 +1,228 @@
+package pucrs.alest2.assignment2.rsuffert;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.zip.CRC32C;
+
+/**
+ * The {@link MapSnapshot} class reads and writes the binary snapshot of a map, which holds the graph of the text file it was built from
+ * (with the cells packed in half the space) and, optionally, the distances between its ports, so that reloading the map skips the
+ * searches as well as the parsing. All the numbers are big-endian, and the file is laid out as follows:
+ * <pre>
+ * int     magic number ("PHNX")
+ * int     version of the format
+ * long    size of the map file the snapshot was built from
+ * long    last modification time of that map file (milliseconds)
+ * int     lines
+ * int     columns
+ * int     number of ports
+ * int[10] code of the vertex of each port (-1 if the port is not in the map)
+ * int     flags (PACKED_CELLS, DISTANCES)
+ * byte[]  cells: two per byte (low nibble first) if PACKED_CELLS is set, or one character per byte otherwise
+ * int[]   if DISTANCES is set, the ten distances from each port in the map to every port (-1 if unreachable or not in the map)
+ * int     CRC-32C of all the previous bytes
+ * </pre>
+ * A packed cell holds the digit of a port (0-9), {@code PACKED_OBSTACLE} or {@code PACKED_WATER}; maps with any other character are
+ * stored unpacked. A snapshot whose version, checksum, size or recorded map file does not match is ignored by {@link #read(Path, Path)},
+ * so the map is parsed again from the text file.
+ * @author Ricardo Süffert
+ */
+class MapSnapshot {
+    private static final int MAGIC = 0x50484E58; // "PHNX"
+    private static final int VERSION = 1; // must be incremented whenever the layout changes
+    private static final int MAX_PORTS = 10; // ports are single digits
+    private static final int PACKED_CELLS = 1; // flag: the cells are stored as nibbles
+    private static final int DISTANCES = 2; // flag: the distances between the ports are stored
+    private static final int PACKED_OBSTACLE = 10; // nibble of an obstacle
+    private static final int PACKED_WATER = 11; // nibble of a navigable cell that is not a port
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 4 + 4 + 4 + 4*MAX_PORTS + 4; // bytes before the cells
+
+    private int lines; // number of lines (rows) in the map
+    private int columns; // number of columns in the map
+    private byte[] cells; // cells[i] contains the character value of the vertex i
+    private int[] portCodes; // portCodes[p] contains the code of port p, or -1 if the port is not in the map
+    private int portsCount; // number of ports in the map
+    private PortDistanceMatrix distances; // the distances between the ports, or null if they were not stored
+
+    private MapSnapshot() {}
+
+    /**
+     * Returns the path of the snapshot of a given map file, which is kept next to it.
+     * @param map the path to the map file
+     * @return the path to the snapshot of the map
+     */
+    static Path pathOf(Path map) { return map.resolveSibling(map.getFileName() + ".snapshot"); }
+
+    /**
+     * Reads the snapshot of a map file through a memory mapping.
+     * @param map the path to the map file
+     * @param snapshot the path to the snapshot
+     * @return the contents of the snapshot, or {@code null} if it does not exist, is stale (the map file has changed since it was
+     *         written), was written by another version of the format or is corrupted
+     */
+    static MapSnapshot read(Path map, Path snapshot) {
+        try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE + 4 || size > Integer.MAX_VALUE) return null;
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            int limit = (int) size;
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) return null;
+
+            BasicFileAttributes source = Files.readAttributes(map, BasicFileAttributes.class);
+            if (buffer.getLong(8) != source.size() || buffer.getLong(16) != source.lastModifiedTime().toMillis()) return null;
+
+            CRC32C crc = new CRC32C();
+            crc.update(buffer.slice(0, limit-4));
+            if ((int) crc.getValue() != buffer.getInt(limit-4)) return null;
+
+            MapSnapshot result = new MapSnapshot();
+            int position = 24;
+            result.lines      = buffer.getInt(position);
+            result.columns    = buffer.getInt(position+4);
+            result.portsCount = buffer.getInt(position+8);
+            position += 12;
+            result.portCodes = new int[MAX_PORTS];
+            for (int p=0; p<MAX_PORTS; p++, position += 4) result.portCodes[p] = buffer.getInt(position);
+            int flags = buffer.getInt(position);
+            position += 4;
+
+            int vertexCount = Math.multiplyExact(result.lines, result.columns);
+            int cellBytes = (flags & PACKED_CELLS) != 0 ? (vertexCount+1) / 2 : vertexCount;
+            int distanceBytes = (flags & DISTANCES) != 0 ? 4 * MAX_PORTS * result.portsCount : 0;
+            if ((long) position + cellBytes + distanceBytes + 4 != size) return null;
+
+            result.cells = new byte[vertexCount];
+            if ((flags & PACKED_CELLS) != 0) unpack(buffer, position, result.cells);
+            else                             buffer.get(position, result.cells, 0, vertexCount);
+            position += cellBytes;
+
+            if ((flags & DISTANCES) != 0) {
+                int[][] distances = new int[MAX_PORTS][];
+                for (int p=0; p<MAX_PORTS; p++) {
+                    if (result.portCodes[p] == -1) continue;
+                    distances[p] = new int[MAX_PORTS];
+                    for (int q=0; q<MAX_PORTS; q++, position += 4) distances[p][q] = buffer.getInt(position);
+                }
+                result.distances = new PortDistanceMatrix(result.portsCount, distances);
+            }
+            return result;
+        } catch (IOException | ArithmeticException e) {
+            return null; // a snapshot that cannot be read is treated as a missing one
+        }
+    }
+
+    /**
+     * Writes the snapshot of a graph. The snapshot is first written to a temporary file, which then replaces the old snapshot, so a
+     * snapshot that is being read is never seen half-written.
+     * @param g the graph
+     * @param map the path to the map file the graph was loaded from
+     * @param distances the distances between the ports of the graph, or {@code null} if they should not be stored
+     * @throws IOException if the snapshot could not be written
+     */
+    static void write(Graph g, Path map, PortDistances distances) throws IOException {
+        BasicFileAttributes source = Files.readAttributes(map, BasicFileAttributes.class);
+        byte[] cells = g.getCells();
+        boolean packed = isPackable(cells);
+        int cellBytes = packed ? (cells.length+1) / 2 : cells.length;
+        int distanceBytes = distances != null ? 4 * MAX_PORTS * g.getPortsCount() : 0;
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + cellBytes + distanceBytes + 4);
+        buffer.putInt(MAGIC).putInt(VERSION);
+        buffer.putLong(source.size()).putLong(source.lastModifiedTime().toMillis());
+        buffer.putInt(g.getLines()).putInt(g.getColumns()).putInt(g.getPortsCount());
+        for (int p=0; p<MAX_PORTS; p++) {
+            Integer code = g.translatePortToCode(p);
+            buffer.putInt(code == null ? -1 : code);
+        }
+        buffer.putInt((packed ? PACKED_CELLS : 0) | (distances != null ? DISTANCES : 0));
+
+        if (packed) pack(cells, buffer);
+        else        buffer.put(cells);
+
+        if (distances != null) {
+            for (int p=0; p<MAX_PORTS; p++) {
+                if (g.translatePortToCode(p) == null) continue;
+                for (int q=0; q<MAX_PORTS; q++)
+                    buffer.putInt(g.translatePortToCode(q) == null ? PortDistances.UNREACHABLE : distances.distance(p, q));
+            }
+        }
+
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.array(), 0, buffer.position());
+        buffer.putInt((int) crc.getValue());
+
+        Path snapshot  = pathOf(map);
+        Path temporary = Files.createTempFile(snapshot.toAbsolutePath().getParent(), snapshot.getFileName().toString(), ".tmp");
+        try {
+            Files.write(temporary, buffer.array());
+            Files.move(temporary, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    // returns whether or not all the cells are ports, obstacles or water, which can be packed as nibbles
+    private static boolean isPackable(byte[] cells) {
+        for (byte cell : cells) {
+            if (cell != Graph.OBSTACLE && cell != '.' && (cell < '0' || cell > '9')) return false;
+        }
+        return true;
+    }
+
+    // packs the cells two per byte, the first of each pair in the low nibble
+    private static void pack(byte[] cells, ByteBuffer buffer) {
+        for (int i=0; i<cells.length; i += 2) {
+            int low  = nibbleOf(cells[i]);
+            int high = i+1 < cells.length ? nibbleOf(cells[i+1]) : 0;
+            buffer.put((byte) (low | high << 4));
+        }
+    }
+
+    // unpacks the cells stored two per byte from a given position of the buffer, copying the packed bytes out in bulk first
+    private static void unpack(MappedByteBuffer buffer, int position, byte[] cells) {
+        byte[] packed = new byte[(cells.length+1) / 2];
+        buffer.get(position, packed);
+        byte[] characters = new byte[16];
+        for (int nibble=0; nibble<16; nibble++) characters[nibble] = characterOf(nibble);
+        int pairs = cells.length / 2;
+        for (int i=0; i<pairs; i++) {
+            int b = packed[i];
+            cells[2*i]   = characters[b & 0xF];
+            cells[2*i+1] = characters[(b >>> 4) & 0xF];
+        }
+        if ((cells.length & 1) != 0) cells[cells.length-1] = characters[packed[pairs] & 0xF];
+    }
+
+    // returns the nibble of a packable cell
+    private static int nibbleOf(byte cell) {
+        if (cell == Graph.OBSTACLE) return PACKED_OBSTACLE;
+        if (cell == '.')            return PACKED_WATER;
+        return cell - '0';
+    }
+
+    // returns the character of a nibble
+    private static byte characterOf(int nibble) {
+        if (nibble == PACKED_OBSTACLE) return Graph.OBSTACLE;
+        if (nibble == PACKED_WATER)    return '.';
+        return (byte) ('0' + nibble);
+    }
+
+    int getLines() { return lines; }
+
+    int getColumns() { return columns; }
+
+    byte[] getCells() { return cells; }
+
+    int[] getPortCodes() { return portCodes; }
+
+    int getPortsCount() { return portsCount; }
+
+    PortDistanceMatrix getDistances() { return distances; }
+}
@@ -0,0 +1,157 @@
+package pucrs.alest2.assignment2.rsuffert;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The {@link PagedBitFile} class is a set of bits kept in a file, of which only a bounded number of pages is held in memory at a time.
+ * The pages are cached in least-recently-used order, like the results in {@link SearchCache}, and the modified ones are written back to
+ * the file when they are evicted. The last page used is kept aside, so a sequence of accesses to increasing bits (as in a sweep over a
+ * band of rows of a map) does not look the cache up for every bit. An instance is not thread-safe.
+ * @author Ricardo Süffert
+ */
+class PagedBitFile implements Closeable {
+    private final FileChannel channel; // the file that holds the bits
+    private final int pageSize; // number of bytes in a page (a power of two)
+    private final int pageShift; // base-2 logarithm of the page size
+    private final long length; // number of bytes in the file
+    private final Map<Long, Page> pages; // the pages held in memory, from the least to the most recently used
+    private Page last; // the page of the last bit accessed
+    private long lastIndex = -1; // the index of the last page, or -1 if no bit was accessed yet
+
+    /**
+     * Opens the file of a set of bits, which is extended with zeros if it is shorter than needed.
+     * @param path the path to the file
+     * @param bits the number of bits in the set
+     * @param pageSize the number of bytes in a page, which must be a power of two
+     * @param maxPages the maximum number of pages held in memory
+     * @throws IOException if the file could not be opened
+     */
+    PagedBitFile(Path path, long bits, int pageSize, int maxPages) throws IOException {
+        if (pageSize < 1 || Integer.bitCount(pageSize) != 1) throw new IllegalArgumentException("pageSize must be a power of two");
+        if (maxPages < 1) throw new IllegalArgumentException("maxPages must be positive");
+        this.channel  = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        this.pageSize  = pageSize;
+        this.pageShift = Integer.numberOfTrailingZeros(pageSize);
+        this.length   = (bits + 7) / 8;
+        this.pages    = new LinkedHashMap<>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Page> eldest) {
+                if (size() <= maxPages) return false;
+                writeBack(eldest.getKey(), eldest.getValue());
+                if (eldest.getKey() == lastIndex) lastIndex = -1; // the page is no longer in memory
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Returns the value of a bit.
+     * @param bit the index of the bit
+     * @return {@code true} if the bit is set; {@code false} otherwise
+     */
+    boolean get(long bit) {
+        long position = bit >>> 3;
+        Page page = pageOf(position >>> pageShift);
+        return (page.bytes[(int) position & (pageSize-1)] & (1 << (bit & 7))) != 0;
+    }
+
+    /**
+     * Sets a bit.
+     * @param bit the index of the bit
+     */
+    void set(long bit) { getAndSet(bit); }
+
+    /**
+     * Sets a bit, returning its previous value, with a single lookup of its page.
+     * @param bit the index of the bit
+     * @return {@code true} if the bit was already set; {@code false} otherwise
+     */
+    boolean getAndSet(long bit) {
+        long position = bit >>> 3;
+        Page page = pageOf(position >>> pageShift);
+        int index = (int) position & (pageSize-1), mask = 1 << (bit & 7);
+        if ((page.bytes[index] & mask) != 0) return true;
+        page.bytes[index] |= (byte) mask;
+        page.dirty = true;
+        return false;
+    }
+
+    // returns a page, reading it from the file if it is not in memory
+    private Page pageOf(long index) {
+        if (index == lastIndex) return last;
+        Page page = pages.get(index);
+        if (page == null) {
+            page = new Page(new byte[(int) Math.min(pageSize, length - (index << pageShift))]);
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(page.bytes);
+                while (buffer.hasRemaining() && channel.read(buffer, (index << pageShift) + buffer.position()) >= 0);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            pages.put(index, page);
+        }
+        last      = page;
+        lastIndex = index;
+        return page;
+    }
+
+    // writes a page back to the file, if it was modified
+    private void writeBack(long index, Page page) {
+        if (!page.dirty) return;
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(page.bytes);
+            while (buffer.hasRemaining()) channel.write(buffer, (index << pageShift) + buffer.position());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        page.dirty = false;
+    }
+
+    /**
+     * Writes the modified pages back to the file and closes it.
+     * @throws IOException if the pages could not be written
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            for (Iterator<Map.Entry<Long, Page>> it = pages.entrySet().iterator(); it.hasNext(); ) {
+                Map.Entry<Long, Page> entry = it.next();
+                writeBack(entry.getKey(), entry.getValue());
+                it.remove();
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Closes the file without writing the modified pages that are still in memory back to it, for a file whose contents are no longer
+     * needed (the pages evicted before were written, though).
+     * @throws IOException if the file could not be closed
+     */
+    void discard() throws IOException {
+        pages.clear();
+        channel.close();
+    }
+
+    // a page of the file held in memory
+    private static class Page {
+        final byte[] bytes; // the bytes of the page
+        boolean dirty; // whether or not the page was modified since it was read
+
+        Page(byte[] bytes) { this.bytes = bytes; }
+    }
+}
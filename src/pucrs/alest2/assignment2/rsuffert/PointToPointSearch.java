@@ -0,0 +1,22 @@
+package pucrs.alest2.assignment2.rsuffert;
+
+/**
+ * The {@link PointToPointSearch} interface represents an algorithm that finds out the length of the shortest path between two vertices
+ * of a {@link Graph}. Unlike a single-source search, a point-to-point search may stop as soon as the distance to the target vertex is
+ * known, without exploring the rest of the graph.
+ * @author Ricardo Süffert
+ */
+public interface PointToPointSearch {
+    /**
+     * The distance returned by {@link #distance(int, int)} when there is no path between the two vertices.
+     */
+    int UNREACHABLE = -1;
+
+    /**
+     * Returns the length of the shortest path from a source vertex to a target vertex.
+     * @param s the source vertex
+     * @param t the target vertex
+     * @return the distance from {@code s} to {@code t}, or {@link #UNREACHABLE} if there isn't a path from {@code s} to {@code t}
+     */
+    int distance(int s, int t);
+}
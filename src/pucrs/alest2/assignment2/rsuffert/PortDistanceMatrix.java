@@ -0,0 +1,168 @@
+package pucrs.alest2.assignment2.rsuffert;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The {@link PortDistanceMatrix} class holds the distances between every pair of ports of a map. The matrix is computed with one
+ * breadth-first search per port, all of them running concurrently on a {@link ForkJoinPool} over the same graph (which is only read),
+ * after which any distance between two ports is answered by a table lookup. Each search stops as soon as it has reached all the other
+ * ports of its connected component, instead of flooding the rest of the map, and the ports of other components are known to be
+ * unreachable without any search. If the {@link TerrainCosts} of the graph are not uniform, the breadth-first searches are replaced by
+ * the searches of a {@link DialSearchEngine}, which stop in the same way, and the matrix holds the costs of the cheapest paths (which
+ * may differ from one direction to the other).
+ * @author Ricardo Süffert
+ */
+public class PortDistanceMatrix implements PortDistances {
+    private static final int MAX_PORTS = 10; // ports are single digits
+
+    private final int portsCount; // number of ports in the map
+    private final int[][] distances; // distances[p][q] is the distance from port p to port q, or null if there is no port p
+
+    /**
+     * Computes the distance matrix of a given map graph on the common {@link ForkJoinPool}.
+     * @param g the map graph
+     */
+    public PortDistanceMatrix(Graph g) { this(g, ForkJoinPool.commonPool()); }
+
+    /**
+     * Computes the distance matrix of a given map graph on a given {@link ForkJoinPool}.
+     * @param g the map graph
+     * @param pool the pool in which the searches will run
+     */
+    public PortDistanceMatrix(Graph g, ForkJoinPool pool) { this(g, pool, Instrumentation.DISABLED); }
+
+    /**
+     * Computes the distance matrix of a given map graph on a given {@link ForkJoinPool}, recording the counters of each search.
+     * @param g the map graph
+     * @param pool the pool in which the searches will run
+     * @param metrics where the counters of the searches are recorded
+     */
+    public PortDistanceMatrix(Graph g, ForkJoinPool pool, Instrumentation metrics) {
+        this.portsCount = g.getPortsCount();
+        this.distances  = new int[MAX_PORTS][];
+
+        // the vertex code of each port in the map (-1 if the port is not in the map)
+        int[] portCodes = new int[MAX_PORTS];
+        for (int p=0; p<MAX_PORTS; p++) {
+            Integer code = g.translatePortToCode(p);
+            portCodes[p] = code == null ? -1 : code;
+        }
+
+        List<ForkJoinTask<?>> searches = new ArrayList<>();
+        for (int p=0; p<MAX_PORTS; p++) {
+            if (portCodes[p] == -1) continue;
+            final int port = p;
+            if (g.getTerrainCosts().isUniform())
+                searches.add(ForkJoinTask.adapt(() -> { distances[port] = distancesToPorts(g, port, portCodes, metrics); }));
+            else searches.add(ForkJoinTask.adapt(() -> { distances[port] = costsToPorts(g, port, portCodes, metrics); }));
+        }
+        pool.invoke(new RecursiveAction() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected void compute() { invokeAll(searches); }
+        });
+    }
+
+    /**
+     * Constructs a distance matrix that has already been computed (for example, one read from a {@link MapSnapshot}).
+     * @param portsCount the number of ports in the map
+     * @param distances distances[p][q] is the distance from port p to port q, or null if there is no port p
+     */
+    PortDistanceMatrix(int portsCount, int[][] distances) {
+        this.portsCount = portsCount;
+        this.distances  = distances;
+    }
+
+    /**
+     * Carries out a breadth-first search from a given port until all the ports of its connected component have been reached.
+     * @param g the map graph
+     * @param port the number of the port of reference
+     * @param portCodes the vertex code of each port (-1 if the port is not in the map)
+     * @param metrics where the counters of the search are recorded
+     * @return the distance from the port to each port, or {@link #UNREACHABLE} for the ports that could not be reached
+     */
+    private static int[] distancesToPorts(Graph g, int port, int[] portCodes, Instrumentation metrics) {
+        long start     = metrics.start();
+        int s          = portCodes[port];
+        int[] distTo   = new int[g.getVertexCount()]; // distance from s to each vertex, plus one (0 means not visited)
+        int[] queue    = new int[g.getVertexCount()];
+        int[] adjacent = new int[4];
+
+        int portsLeft = 0; // number of ports of the component of s that have not been reached yet
+        for (int code : portCodes) if (code != -1 && code != s && g.areConnected(s, code)) portsLeft++;
+
+        long edgesScanned = 0; // only counted when the instrumentation is enabled
+        int peakQueue = 1; // only measured when the instrumentation is enabled
+        int head = 0, tail = 0;
+        queue[tail++] = s;
+        distTo[s] = 1;
+        while (head < tail && portsLeft > 0) {
+            int v = queue[head++];
+            int adjacentCount = g.neighbours(v, adjacent);
+            if (Instrumentation.ENABLED) edgesScanned += adjacentCount;
+            for (int i=0; i<adjacentCount; i++) {
+                int w = adjacent[i];
+                if (distTo[w] == 0) {
+                    distTo[w] = distTo[v] + 1;
+                    queue[tail++] = w;
+                    int reached = g.getPortNumber(w);
+                    if (reached != -1 && portCodes[reached] == w) portsLeft--;
+                }
+            }
+            if (Instrumentation.ENABLED && tail-head > peakQueue) peakQueue = tail-head;
+        }
+        if (Instrumentation.ENABLED) metrics.recordSearch(port, head, edgesScanned, peakQueue, start);
+
+        int[] result = new int[MAX_PORTS];
+        Arrays.fill(result, UNREACHABLE);
+        for (int p=0; p<MAX_PORTS; p++) {
+            if (portCodes[p] != -1 && distTo[portCodes[p]] != 0) result[p] = distTo[portCodes[p]] - 1;
+        }
+        return result;
+    }
+
+    /**
+     * Finds the cheapest paths from a given port with Dial's algorithm (or a 0-1 breadth-first search), until the costs of all the ports of
+     * its connected component are final.
+     * @param g the map graph
+     * @param port the number of the port of reference
+     * @param portCodes the vertex code of each port (-1 if the port is not in the map)
+     * @param metrics where the counters of the search are recorded
+     * @return the cost from the port to each port, or {@link #UNREACHABLE} for the ports that could not be reached
+     */
+    private static int[] costsToPorts(Graph g, int port, int[] portCodes, Instrumentation metrics) {
+        long start = metrics.start();
+        int s = portCodes[port];
+        int[] targets = new int[MAX_PORTS]; // the ports of the component of s
+        int targetsCount = 0;
+        for (int code : portCodes) if (code != -1 && g.areConnected(s, code)) targets[targetsCount++] = code;
+
+        DialSearchEngine engine = new DialSearchEngine(g);
+        engine.search(s, targets, targetsCount);
+        if (Instrumentation.ENABLED)
+            metrics.recordSearch(port, engine.getSettledCount(), engine.getEdgesScanned(), engine.getPeakQueue(), start);
+
+        int[] result = new int[MAX_PORTS];
+        Arrays.fill(result, UNREACHABLE);
+        for (int p=0; p<MAX_PORTS; p++) if (portCodes[p] != -1) result[p] = engine.distanceTo(portCodes[p]);
+        return result;
+    }
+
+    @Override
+    public int getPortsCount() { return portsCount; }
+
+    @Override
+    public int distance(int fromPort, int toPort) {
+        if (fromPort < 0 || fromPort >= MAX_PORTS || distances[fromPort] == null)
+            throw new IllegalArgumentException("port " + fromPort + " is not in the map");
+        if (toPort < 0 || toPort >= MAX_PORTS || distances[toPort] == null)
+            throw new IllegalArgumentException("port " + toPort + " is not in the map");
+        return distances[fromPort][toPort];
+    }
+}
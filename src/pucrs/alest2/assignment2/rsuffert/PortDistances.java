@@ -0,0 +1,62 @@
+package pucrs.alest2.assignment2.rsuffert;
+
+/**
+ * The {@link PortDistances} interface represents the distances between the ports of a map, which is all the information {@link App}
+ * needs to plan a voyage. Ports are identified by their numbers (the digits in the map), not by their vertex codes.
+ * @author Ricardo Süffert
+ */
+public interface PortDistances {
+    /**
+     * The distance returned by {@link #distance(int, int)} when there is no path between the two ports.
+     */
+    int UNREACHABLE = PointToPointSearch.UNREACHABLE;
+
+    /**
+     * Returns how many ports there are in the map.
+     * @return the number of ports in the map
+     */
+    int getPortsCount();
+
+    /**
+     * Returns the length of the shortest path from a port to another.
+     * @param fromPort the number of the origin port
+     * @param toPort the number of the destination port
+     * @return the distance from {@code fromPort} to {@code toPort}, or {@link #UNREACHABLE} if there isn't a path between them
+     * @throws IllegalArgumentException if any of the ports is not in the map
+     */
+    int distance(int fromPort, int toPort);
+
+    /**
+     * Returns the distances between the ports of a map graph, computing each one on demand through a given point-to-point search. Ports
+     * in different connected components of the graph are rejected without starting a search.
+     * @param g the map graph
+     * @param search the point-to-point search of {@code g}
+     * @return the distances between the ports of {@code g}
+     */
+    static PortDistances of(Graph g, PointToPointSearch search) {
+        return new PortDistances() {
+            @Override
+            public int getPortsCount() { return g.getPortsCount(); }
+
+            @Override
+            public int distance(int fromPort, int toPort) { 
+                int from = portCode(g, fromPort);
+                int to   = portCode(g, toPort);
+                return g.areConnected(from, to) ? search.distance(from, to) : UNREACHABLE;
+            }
+        };
+    }
+
+    /**
+     * Translates a port number to its vertex code in a given graph.
+     * @param g the map graph
+     * @param portNumber the number of the port
+     * @return the vertex code of the port
+     * @throws IllegalArgumentException if the port is not in the map
+     */
+    static int portCode(Graph g, int portNumber) {
+        Integer code = g.translatePortToCode(portNumber);
+        if (code == null) throw new IllegalArgumentException("port " + portNumber + " is not in the map");
+        return code;
+    }
+}
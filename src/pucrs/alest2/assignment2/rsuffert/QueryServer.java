@@ -0,0 +1,443 @@
+package pucrs.alest2.assignment2.rsuffert;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.InvalidAlgorithmParameterException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+/**
+ * The {@link QueryServer} class implements the server mode of the program: a local HTTP server (built on the JDK's
+ * {@code com.sun.net.httpserver}) that loads each map once, keeps it in memory, and answers queries about it as JSON, so repeated queries
+ * skip the start of the JVM, the loading of the map and the searches between its ports. The endpoints only accept {@code GET}:
+ * <pre>
+ * /fuel?map=M                     {"map": "M", "fuel": N, "lastPort": N, "inaccessible": [N, ...]}
+ * /distance?map=M&amp;from=A&amp;to=B     {"map": "M", "from": "A", "to": "B", "distance": N | null}
+ * /reachable?map=M&amp;from=A&amp;to=B    {"map": "M", "from": "A", "to": "B", "reachable": true | false}
+ * /maps                           {"maps": ["M", ...], "cache": {"hits": N, "misses": N, "bytes": N}}
+ * </pre>
+ * {@code M} is the path of a map file relative to the root directory of the server (files outside it are refused), and {@code A} and
+ * {@code B} are either the number of a port or a cell, as {@code row,column} (counted from 0). Errors are answered with a 4xx status and
+ * {@code {"error": "message"}}.
+ * <p>
+ * Each map is loaded the first time it is queried (or when the server starts), with {@link Graph#load(String)}, and its voyage is solved
+ * right away. The graphs are only read after that, so they are shared by all the worker threads: the distances between ports come from
+ * the matrix of the graph, those from a port to a cell from a {@link SearchCache} shared by all the maps, and those between two cells
+ * from a point-to-point search taken from a pool kept for each map (searches are not thread-safe, so each one serves one query at a
+ * time). The requests are handled on virtual threads when the JVM supports them, so the pool of each map is bounded by the number of
+ * workers of the server: a query that finds all of them busy waits for one, instead of allocating another search of the size of the map.
+ * @author Ricardo Süffert
+ */
+public class QueryServer {
+    /**
+     * The default size of the cache of the searches from the ports: 256 MiB.
+     */
+    public static final long DEFAULT_CACHE_BYTES = 256L << 20;
+
+    private final Path root; // the directory the paths of the maps are relative to
+    private final SearchCache cache; // results of the searches from the ports of all the maps
+    private final SearchAlgorithm algorithm; // algorithm of the searches between two cells
+    private final int workers; // number of platform threads of the server, and of searches between two cells of each map
+    private final Map<Path, CompletableFuture<LoadedMap>> maps = new ConcurrentHashMap<>(); // the maps loaded or being loaded
+    private HttpServer server; // the HTTP server, or null if it is not running
+    private ExecutorService executor; // the executor of the requests, or null if the server is not running
+
+    /**
+     * Constructs a server of the maps under a given directory. The server does not listen for requests until {@link #start(int)}.
+     * @param root the directory the paths of the maps are relative to
+     * @param cacheBytes the maximum total size of the cached searches from the ports, in bytes
+     * @param algorithm the algorithm of the searches between two cells
+     */
+    public QueryServer(Path root, long cacheBytes, SearchAlgorithm algorithm) {
+        this.root      = root.toAbsolutePath().normalize();
+        this.cache     = new SearchCache(cacheBytes);
+        this.algorithm = algorithm;
+        this.workers   = Math.max(4, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Runs the server mode with the given command-line arguments: {@code --serve PORT}, optionally followed by {@code --root DIRECTORY}
+     * (the current directory by default), {@code --cache MB}, {@code --algorithm NAME} (see {@link SearchAlgorithm}) and the maps to be
+     * loaded before the server starts listening.
+     * @param args the command-line arguments
+     * @return 0 if the server has started (it keeps running on its own threads), 1 if a map could not be loaded, or 2 if the arguments
+     *         are invalid or the server could not be started
+     */
+    public static int run(String[] args) {
+        int port = -1;
+        Path root = Paths.get("");
+        long cacheBytes = DEFAULT_CACHE_BYTES;
+        SearchAlgorithm algorithm = SearchAlgorithm.JUMP_POINT;
+        List<String> preload = new ArrayList<>();
+        try {
+            for (int i=0; i<args.length; i++) {
+                if (args[i].equals("--serve") && i+1 < args.length)          port = Integer.parseInt(args[++i]);
+                else if (args[i].equals("--root") && i+1 < args.length)      root = Paths.get(args[++i]);
+                else if (args[i].equals("--cache") && i+1 < args.length)     cacheBytes = Long.parseLong(args[++i]) << 20;
+                else if (args[i].equals("--algorithm") && i+1 < args.length) algorithm = SearchAlgorithm.valueOf(args[++i]);
+                else preload.add(args[i]);
+            }
+        } catch (IllegalArgumentException e) { // also NumberFormatException and InvalidPathException
+            port = -1;
+        }
+        if (port < 0 || port > 65535 || cacheBytes < 0) {
+            System.err.println("Uso: App --serve porta [--root diretório] [--cache MB] [--algorithm nome] [arquivo.map]...");
+            return 2;
+        }
+
+        QueryServer queryServer = new QueryServer(root, cacheBytes, algorithm);
+        for (String map : preload) {
+            try {
+                queryServer.load(map);
+            } catch (IOException | IllegalArgumentException e) {
+                System.err.println("Não foi possível carregar o mapa " + map + ": " + e.getMessage());
+                return 1;
+            }
+        }
+        try {
+            queryServer.start(port);
+        } catch (IOException e) {
+            System.err.println("Não foi possível iniciar o servidor: " + e.getMessage());
+            return 2;
+        }
+        System.err.println("Servidor ouvindo em http://localhost:" + queryServer.getPort() + "/");
+        return 0;
+    }
+
+    /**
+     * Starts listening for requests on a given port of the loopback interface (only local clients are served).
+     * @param port the port, or 0 for any free port
+     * @throws IOException if the server could not be bound to the port
+     * @throws IllegalStateException if the server is already running
+     */
+    public synchronized void start(int port) throws IOException {
+        if (server != null) throw new IllegalStateException("the server is already running");
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/fuel", handler(this::fuel));
+        server.createContext("/distance", handler(parameters -> pairQuery(parameters, false)));
+        server.createContext("/reachable", handler(parameters -> pairQuery(parameters, true)));
+        server.createContext("/maps", handler(parameters -> describeMaps()));
+        executor = BatchRunner.newExecutor(workers);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * Stops the server, waiting at most one second for the requests being answered.
+     */
+    public synchronized void stop() {
+        if (server == null) return;
+        server.stop(1);
+        executor.shutdownNow();
+        server   = null;
+        executor = null;
+    }
+
+    /**
+     * Returns the port the server is listening on.
+     * @return the port of the server, or -1 if it is not running
+     */
+    public synchronized int getPort() { return server == null ? -1 : server.getAddress().getPort(); }
+
+    /**
+     * Loads a map (unless it has already been loaded) and solves its voyage. If several threads ask for the same map at the same time,
+     * only one of them loads it, and the others wait for it.
+     * @param map the path of the map file, relative to the root directory
+     * @return the loaded map
+     * @throws IOException if the map file could not be read or is not a valid map
+     * @throws IllegalArgumentException if the path is outside the root directory
+     */
+    private LoadedMap load(String map) throws IOException {
+        Path path;
+        try {
+            path = root.resolve(map).normalize();
+        } catch (InvalidPathException e) {
+            throw new IllegalArgumentException("Caminho inválido: " + map);
+        }
+        if (!path.startsWith(root)) throw new IllegalArgumentException("O mapa deve estar dentro do diretório " + root);
+
+        CompletableFuture<LoadedMap> loading = new CompletableFuture<>();
+        CompletableFuture<LoadedMap> existing = maps.putIfAbsent(path, loading);
+        if (existing == null) { // this thread loads the map
+            try {
+                loading.complete(new LoadedMap(root.relativize(path).toString(), Graph.load(path.toString()), algorithm, workers));
+            } catch (IOException | RuntimeException e) {
+                maps.remove(path, loading); // a later query may try again
+                loading.completeExceptionally(e);
+            }
+            existing = loading;
+        }
+        try {
+            return existing.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrompido");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException)      throw (IOException) e.getCause();
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Answers {@code /fuel}: the result of the voyage of a map.
+     * @param parameters the parameters of the query
+     * @return the answer as JSON
+     * @throws IOException if the map could not be loaded
+     * @throws QueryException if the parameters are invalid or the voyage has no solution
+     */
+    private String fuel(Map<String, String> parameters) throws IOException, QueryException {
+        LoadedMap map = load(required(parameters, "map"));
+        if (map.voyage == null) throw new QueryException(422, map.voyageError);
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"map\": ").append(Instrumentation.quote(map.name))
+          .append(", \"fuel\": ").append(map.voyage.getFuel())
+          .append(", \"lastPort\": ").append(map.voyage.getLastPortVisited())
+          .append(", \"inaccessible\": [");
+        int[] inaccessible = map.voyage.getInaccessiblePorts();
+        for (int i=0; i<inaccessible.length; i++) sb.append(i > 0 ? ", " : "").append(inaccessible[i]);
+        return sb.append("]}").toString();
+    }
+
+    /**
+     * Answers {@code /distance} and {@code /reachable}: the distance between two places of a map, or whether or not there is a path
+     * between them.
+     * @param parameters the parameters of the query
+     * @param reachability {@code true} to answer whether or not there is a path; {@code false} to answer the distance
+     * @return the answer as JSON
+     * @throws IOException if the map could not be loaded
+     * @throws QueryException if the parameters are invalid
+     */
+    private String pairQuery(Map<String, String> parameters, boolean reachability) throws IOException, QueryException {
+        LoadedMap map = load(required(parameters, "map"));
+        String from = required(parameters, "from"), to = required(parameters, "to");
+        int s = map.vertexOf(from), t = map.vertexOf(to);
+
+        String answer;
+        if (!map.g.areConnected(s, t)) answer = reachability ? "false" : s == t ? "0" : "null";
+        else if (reachability)          answer = "true";
+        else                            answer = String.valueOf(map.distance(s, t, cache));
+        return String.format(Locale.ROOT, "{\"map\": %s, \"from\": %s, \"to\": %s, \"%s\": %s}", Instrumentation.quote(map.name),
+                             Instrumentation.quote(from), Instrumentation.quote(to), reachability ? "reachable" : "distance", answer);
+    }
+
+    /**
+     * Answers {@code /maps}: the maps loaded and the counters of the cache.
+     * @return the answer as JSON
+     */
+    private String describeMaps() {
+        StringBuilder sb = new StringBuilder("{\"maps\": [");
+        String separator = "";
+        for (CompletableFuture<LoadedMap> loading : maps.values()) {
+            LoadedMap map = loading.getNow(null);
+            if (map == null) continue; // still being loaded
+            sb.append(separator).append(Instrumentation.quote(map.name));
+            separator = ", ";
+        }
+        return sb.append(String.format(Locale.ROOT, "], \"cache\": {\"hits\": %d, \"misses\": %d, \"bytes\": %d}}",
+                                       cache.getHits(), cache.getMisses(), cache.getSizeInBytes())).toString();
+    }
+
+    // returns a required parameter of a query
+    private static String required(Map<String, String> parameters, String name) throws QueryException {
+        String value = parameters.get(name);
+        if (value == null || value.isEmpty()) throw new QueryException(400, "Parâmetro obrigatório ausente: " + name);
+        return value;
+    }
+
+    /**
+     * Wraps the answer of an endpoint into a handler of HTTP exchanges, which parses the query string, only accepts {@code GET} and
+     * turns the errors into JSON answers with the matching status.
+     * @param endpoint the endpoint
+     * @return the handler
+     */
+    private static HttpHandler handler(Endpoint endpoint) {
+        return exchange -> {
+            int status = 200;
+            String body;
+            try {
+                if (!exchange.getRequestMethod().equals("GET")) throw new QueryException(405, "Apenas GET é aceito");
+                body = endpoint.answer(parseQuery(exchange.getRequestURI().getRawQuery()));
+            } catch (QueryException e) {
+                status = e.status;
+                body = error(e.getMessage());
+            } catch (MapFormatException e) {
+                status = 422;
+                body = error("O arquivo não é um mapa válido: " + e.getMessage());
+            } catch (IOException e) {
+                status = 404;
+                body = error("Não foi possível ler o mapa: " + e.getMessage());
+            } catch (IllegalArgumentException e) {
+                status = 400;
+                body = error(e.getMessage());
+            } catch (RuntimeException e) {
+                status = 500;
+                body = error(e.toString());
+            }
+            send(exchange, status, body);
+        };
+    }
+
+    // returns the JSON answer of an error
+    private static String error(String message) { return "{\"error\": " + Instrumentation.quote(String.valueOf(message)) + "}"; }
+
+    // writes the answer of an exchange and closes it
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    // parses the parameters of a query string
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> parameters = new HashMap<>();
+        if (query == null) return parameters;
+        for (String pair : query.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals <= 0) continue;
+            parameters.put(URLDecoder.decode(pair.substring(0, equals), StandardCharsets.UTF_8),
+                           URLDecoder.decode(pair.substring(equals+1), StandardCharsets.UTF_8));
+        }
+        return parameters;
+    }
+
+    /**
+     * An endpoint of the server, which answers the parameters of a query with JSON.
+     */
+    @FunctionalInterface
+    private interface Endpoint {
+        String answer(Map<String, String> parameters) throws IOException, QueryException;
+    }
+
+    /**
+     * An error in a query, answered with a given HTTP status.
+     */
+    private static class QueryException extends Exception {
+        private static final long serialVersionUID = 1L;
+        final int status; // the HTTP status of the answer
+
+        QueryException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    /**
+     * A map held by the server: its graph, which is only read, the solution of its voyage and the pool of its point-to-point searches.
+     */
+    private static class LoadedMap {
+        final String name; // the path of the map, relative to the root directory
+        final Graph g; // the map graph
+        final PortDistances portDistances; // the distances between the ports
+        final Voyage voyage; // the solution of the voyage, or null if it has none
+        final String voyageError; // why the voyage has no solution, or null if it has one
+        private final Supplier<PointToPointSearch> newSearch; // creates the searches between two cells, sharing their preprocessing
+        private final Semaphore searchPermits; // one permit per search that may exist, whether in use or not
+        private final ConcurrentLinkedQueue<PointToPointSearch> searches = new ConcurrentLinkedQueue<>(); // searches not in use
+
+        LoadedMap(String name, Graph g, SearchAlgorithm algorithm, int maxSearches) {
+            this.name          = name;
+            this.g             = g;
+            this.newSearch     = algorithm.factory(g);
+            this.searchPermits = new Semaphore(maxSearches);
+            this.portDistances = g.getPortDistances();
+            Voyage solved = null;
+            String error  = null;
+            try {
+                solved = new Voyage(portDistances);
+            } catch (InvalidAlgorithmParameterException e) {
+                error = e.getMessage();
+            }
+            this.voyage      = solved;
+            this.voyageError = error;
+        }
+
+        /**
+         * Returns the vertex of a place of the map, given either as the number of a port or as {@code row,column}.
+         * @param place the place
+         * @return the vertex of the place
+         * @throws QueryException if the place is not in the map
+         */
+        int vertexOf(String place) throws QueryException {
+            try {
+                int comma = place.indexOf(',');
+                if (comma < 0) {
+                    Integer code = g.translatePortToCode(Integer.parseInt(place.trim()));
+                    if (code == null) throw new QueryException(400, "O porto " + place + " não existe no mapa");
+                    return code;
+                }
+                int row    = Integer.parseInt(place.substring(0, comma).trim());
+                int column = Integer.parseInt(place.substring(comma+1).trim());
+                if (row < 0 || row >= g.getLines() || column < 0 || column >= g.getColumns())
+                    throw new QueryException(400, "A posição " + place + " está fora do mapa");
+                return row * g.getColumns() + column;
+            } catch (NumberFormatException e) {
+                throw new QueryException(400, "Posição inválida (use o número de um porto ou linha,coluna): " + place);
+            }
+        }
+
+        /**
+         * Returns the distance between two connected vertices: from the matrix if both are ports, from the cached search of the port if
+         * one of them is a port, or from a point-to-point search otherwise. A search is only created when all those of the map are in use
+         * and there are fewer of them than the limit; otherwise, the query waits for one to be released.
+         * @param s a vertex
+         * @param t another vertex, connected to {@code s}
+         * @param cache the cache of the searches from the ports
+         * @return the distance between {@code s} and {@code t}
+         * @throws IOException if the thread was interrupted while waiting for a search
+         */
+        int distance(int s, int t, SearchCache cache) throws IOException {
+            int sourcePort = portAt(s), targetPort = portAt(t);
+            if (sourcePort != -1 && targetPort != -1) return portDistances.distance(sourcePort, targetPort);
+            if (sourcePort != -1) return cache.paths(g, sourcePort).distanceTo(t);
+            if (targetPort != -1) return cache.paths(g, targetPort).distanceTo(s); // the distances are symmetric
+
+            try {
+                searchPermits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrompido");
+            }
+            try {
+                PointToPointSearch search = searches.poll(); // with a permit, either there is a search not in use or one may be created
+                if (search == null) search = newSearch.get();
+                try {
+                    return search.distance(s, t);
+                } finally {
+                    searches.offer(search);
+                }
+            } finally {
+                searchPermits.release();
+            }
+        }
+
+        // returns the number of the port at a vertex, or -1 if the vertex is not a port (a repeated digit is not a port)
+        private int portAt(int v) {
+            int port = g.getPortNumber(v);
+            return port != -1 && g.translatePortToCode(port) == v ? port : -1;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package pucrs.alest2.assignment2.rsuffert;
+
+import java.util.Arrays;
+
+/**
+ * The {@link Route} class holds the cells a {@link Voyage} goes through, leg after leg, in a single primitive array: the route starts at
+ * the first port, and each leg continues from the last vertex of the previous one, so the port where two legs meet appears only once.
+ * The array has exactly one more vertex than the fuel of the voyage, and each leg is written into it straight from the search, without
+ * boxing any vertex. Since that only holds if every move costs 1, routes are only found in graphs with uniform {@link TerrainCosts}.
+ * Instances are immutable.
+ * @author Ricardo Süffert
+ */
+public class Route {
+    private final int[] itinerary; // the ports of the voyage, in the order they are visited
+    private final int[] vertices; // the vertices of the route, from the first port back to the first port
+    private final int[] legStarts; // legStarts[i] is the index in vertices of the first vertex of leg i (the port it leaves from)
+
+    /**
+     * Finds the route of a given voyage in the map graph it was solved for.
+     * @param g the map graph
+     * @param voyage the voyage solved for {@code g}
+     * @throws IllegalArgumentException if the {@link TerrainCosts} of the graph are not uniform, or if the voyage does not match the graph
+     *                                  (for example, if the graph has changed since)
+     */
+    public Route(Graph g, Voyage voyage) { this(g, voyage, new BreadthFirstSearchEngine(g)); }
+
+    /**
+     * Finds the route of a given voyage in the map graph it was solved for, reusing a given search engine of the graph.
+     * @param g the map graph
+     * @param voyage the voyage solved for {@code g}
+     * @param engine the breadth-first search engine of {@code g}, whose results are discarded
+     * @throws IllegalArgumentException if the {@link TerrainCosts} of the graph are not uniform, or if the voyage does not match the graph
+     *                                  (for example, if the graph has changed since)
+     */
+    public Route(Graph g, Voyage voyage, BreadthFirstSearchEngine engine) {
+        if (!g.getTerrainCosts().isUniform()) throw new IllegalArgumentException("routes are only found with uniform costs");
+        this.itinerary = voyage.getItinerary();
+        this.vertices  = new int[voyage.getFuel() + 1];
+        this.legStarts = new int[itinerary.length - 1];
+
+        vertices[0] = PortDistances.portCode(g, itinerary[0]);
+        int count = 1;
+        for (int leg=0; leg<legStarts.length; leg++) {
+            int from = vertices[count-1];
+            int to   = PortDistances.portCode(g, itinerary[leg+1]);
+            int distance = engine.distance(from, to);
+            if (distance == PointToPointSearch.UNREACHABLE || count + distance > vertices.length)
+                throw new IllegalArgumentException("the voyage does not match the graph");
+            legStarts[leg] = count-1;
+            count += engine.pathTo(to, vertices, count-1) - 1; // the first vertex of the leg is the last of the previous one
+        }
+        if (count != vertices.length) throw new IllegalArgumentException("the voyage does not match the graph");
+    }
+
+    /**
+     * Returns the ports of the route, in the order they are visited (see {@link Voyage#getItinerary()}).
+     * @return the numbers of the ports of the route, in order
+     */
+    public int[] getItinerary() { return itinerary.clone(); }
+
+    /**
+     * Returns the number of vertices in the route, which is the fuel of the voyage plus one.
+     * @return the number of vertices in the route
+     */
+    public int size() { return vertices.length; }
+
+    /**
+     * Returns a vertex of the route.
+     * @param index the position of the vertex in the route, from 0 to {@code size()-1}
+     * @return the vertex at the given position
+     * @throws ArrayIndexOutOfBoundsException unless {@code 0 <= index < size()}
+     */
+    public int vertexAt(int index) { return vertices[index]; }
+
+    /**
+     * Returns the vertices of the route, from the first port back to the first port.
+     * @return a copy of the vertices of the route
+     */
+    public int[] getVertices() { return vertices.clone(); }
+
+    /**
+     * Writes the vertices of the route into a given buffer, from the first port back to the first port.
+     * @param out the buffer that receives the vertices, starting at index 0; it must have room for {@link #size()} vertices
+     * @return the number of vertices written
+     * @throws ArrayIndexOutOfBoundsException if the buffer is too small for the route
+     */
+    public int getVertices(int[] out) {
+        System.arraycopy(vertices, 0, out, 0, vertices.length);
+        return vertices.length;
+    }
+
+    /**
+     * Returns the number of legs in the route (one less than the number of ports in the itinerary).
+     * @return the number of legs
+     */
+    public int getLegsCount() { return legStarts.length; }
+
+    /**
+     * Returns the vertices of a leg of the route, from the port it leaves from to the port it arrives at.
+     * @param leg the number of the leg, from 0 to {@code getLegsCount()-1}
+     * @return a copy of the vertices of the leg
+     * @throws ArrayIndexOutOfBoundsException unless {@code 0 <= leg < getLegsCount()}
+     */
+    public int[] getLeg(int leg) {
+        int end = leg+1 < legStarts.length ? legStarts[leg+1] : vertices.length-1;
+        return Arrays.copyOfRange(vertices, legStarts[leg], end+1);
+    }
+}
@@ -0,0 +1,93 @@
+package pucrs.alest2.assignment2.rsuffert;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * The {@link RouteOverlayWriter} class writes a map back out, in the format of the map files, with a route drawn over it: every cell of
+ * the route that is not a port is replaced by a mark. The map is written one row at a time, from a single row buffer, and the route is
+ * sorted once so that the marks of each row are found in order, so the memory used is proportional to the route and to a row, and not to
+ * the map. The output can be read back as a map, since the mark is navigable.
+ * @author Ricardo Süffert
+ */
+public class RouteOverlayWriter {
+    /**
+     * The default mark of the cells of the route.
+     */
+    public static final char DEFAULT_MARK = '+';
+
+    private final Graph g; // the map graph
+    private final byte mark; // the character that replaces the cells of the route
+
+    /**
+     * Constructs a writer of the routes of a given map graph, which marks them with {@link #DEFAULT_MARK}.
+     * @param g the map graph
+     */
+    public RouteOverlayWriter(Graph g) { this(g, DEFAULT_MARK); }
+
+    /**
+     * Constructs a writer of the routes of a given map graph, which marks them with a given character.
+     * @param g the map graph
+     * @param mark the character that replaces the cells of the route
+     * @throws IllegalArgumentException if the mark is not a printable ASCII character, or is a digit or an obstacle
+     */
+    public RouteOverlayWriter(Graph g, char mark) {
+        if (mark <= ' ' || mark > '~' || (mark >= '0' && mark <= '9') || mark == Graph.OBSTACLE)
+            throw new IllegalArgumentException("invalid mark: " + mark);
+        this.g    = g;
+        this.mark = (byte) mark;
+    }
+
+    /**
+     * Writes the map with the route of a voyage drawn over it to a given file.
+     * @param route the route
+     * @param file the path to the file
+     * @throws IOException if the file could not be written
+     */
+    public void write(Route route, Path file) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file), 1 << 16)) {
+            write(route, out);
+        }
+    }
+
+    /**
+     * Writes the map with the route of a voyage drawn over it to a given stream, which is neither buffered nor closed by this method.
+     * @param route the route
+     * @param out the stream
+     * @throws IOException if the stream could not be written
+     */
+    public void write(Route route, OutputStream out) throws IOException { write(route.getVertices(), route.size(), out); }
+
+    /**
+     * Writes the map with a path drawn over it to a given stream, which is neither buffered nor closed by this method.
+     * @param path the vertices of the path, in any order
+     * @param count the number of vertices of the path, taken from the beginning of the array
+     * @param out the stream
+     * @throws IOException if the stream could not be written
+     */
+    public void write(int[] path, int count, OutputStream out) throws IOException {
+        int[] sorted = Arrays.copyOf(path, count);
+        Arrays.sort(sorted); // the vertices of each row become consecutive, in the order they are written
+
+        int lines = g.getLines(), columns = g.getColumns();
+        byte[] cells = g.getCells();
+        byte[] row = new byte[columns + 1];
+        row[columns] = '\n';
+        out.write((lines + " " + columns + "\n").getBytes(StandardCharsets.US_ASCII));
+        int next = 0; // the next vertex of the route to be drawn
+        for (int r=0; r<lines; r++) {
+            int first = r * columns;
+            System.arraycopy(cells, first, row, 0, columns);
+            while (next < count && sorted[next] < first + columns) {
+                int v = sorted[next++];
+                if (v >= first && g.getPortNumber(v) == -1) row[v - first] = mark;
+            }
+            out.write(row);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package pucrs.alest2.assignment2.rsuffert;
+
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * The {@link SearchAlgorithm} enumeration lists the point-to-point searches available for the grid maps of the Phoenician problem, so
+ * that the caller can choose the one used to compute the legs of a voyage (for example, through
+ * {@code new Voyage(PortDistances.of(g, SearchAlgorithm.JUMP_POINT.create(g)))}). All of them return the same distances on maps with
+ * uniform {@link TerrainCosts}.
+ * @author Ricardo Süffert
+ */
+public enum SearchAlgorithm {
+    /**
+     * Breadth-first search that stops as soon as the target is reached ({@link BreadthFirstSearchEngine}).
+     */
+    BREADTH_FIRST(BreadthFirstSearchEngine::new),
+    /**
+     * Breadth-first search that expands from both ends ({@link BidirectionalBreadthFirstSearch}).
+     */
+    BIDIRECTIONAL_BREADTH_FIRST(BidirectionalBreadthFirstSearch::new),
+    /**
+     * Breadth-first search over row bitsets ({@link BitParallelBreadthFirstSearch}).
+     */
+    BIT_PARALLEL_BREADTH_FIRST(BitParallelBreadthFirstSearch::new),
+    /**
+     * A* search with the Manhattan distance as the heuristic ({@link AStarSearch}).
+     */
+    A_STAR(AStarSearch::new),
+    /**
+     * Jump Point Search ({@link JumpPointSearch}).
+     */
+    JUMP_POINT(JumpPointSearch::new),
+    /**
+     * A* search over an abstract graph of the entrances of square tiles ({@link HierarchicalSearch}).
+     */
+    HIERARCHICAL(HierarchicalSearch::new),
+    /**
+     * Dial's algorithm, or a 0-1 breadth-first search ({@link DialSearchEngine}), the only one that takes the {@link TerrainCosts} of the
+     * graph into account.
+     */
+    DIAL(DialSearchEngine::new);
+
+    private final Function<Graph, PointToPointSearch> factory; // creates a search of this kind for a graph
+
+    SearchAlgorithm(Function<Graph, PointToPointSearch> factory) { this.factory = factory; }
+
+    /**
+     * Creates a search of this kind for a given graph. The search may be reused for as many queries as needed, but not concurrently.
+     * @param g the base graph
+     * @return a new point-to-point search for {@code g}
+     */
+    public PointToPointSearch create(Graph g) { return factory.apply(g); }
+
+    /**
+     * Returns a factory of searches of this kind for a given graph, meant for the callers that keep several searches of the same graph
+     * (one per thread). The searches that preprocess the graph ({@link #HIERARCHICAL}) only do it for the first search created, and the
+     * others share its preprocessing. The factory is thread-safe.
+     * @param g the base graph
+     * @return a factory of new point-to-point searches for {@code g}
+     */
+    public Supplier<PointToPointSearch> factory(Graph g) {
+        if (this != HIERARCHICAL) return () -> create(g);
+        return new Supplier<PointToPointSearch>() {
+            private HierarchicalSearch preprocessed; // the first search created, whose preprocessing is shared by the others
+
+            @Override
+            public synchronized PointToPointSearch get() {
+                if (preprocessed == null) return preprocessed = new HierarchicalSearch(g);
+                return new HierarchicalSearch(preprocessed);
+            }
+        };
+    }
+}
@@ -0,0 +1,185 @@
+package pucrs.alest2.assignment2.rsuffert;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The {@link SearchCache} class keeps the results of the most recent complete searches ({@link SingleSourcePaths}) from the ports of the
+ * maps held by a long-running process, so that repeated queries from the same port of the same map cost one array read instead of a
+ * search over the whole map. The results are keyed by the graph (its identity), its {@link Graph#getModificationCount() modification
+ * count} and the source port, so a graph changed by {@link Graph#setObstacle(int, boolean)} is searched again, and its results from
+ * before the change are dropped. The least recently used results are evicted once their total estimated size exceeds a limit in bytes;
+ * a result larger than the limit is returned without being stored. Like the searches, the cache only takes graphs with uniform
+ * {@link TerrainCosts}.
+ * <p>
+ * Instances of this class are thread-safe. The searches run outside the lock, so two threads that miss the same key at the same time
+ * may both carry out the search; the second result to arrive replaces the first one.
+ * @author Ricardo Süffert
+ */
+public class SearchCache {
+    private final long maxBytes; // maximum total size of the stored results
+    private final LinkedHashMap<Key, SingleSourcePaths> results = new LinkedHashMap<>(16, 0.75f, true); // in access order
+    private long sizeInBytes; // total size of the stored results
+    private long hits; // number of lookups answered by a stored result
+    private long misses; // number of lookups that needed a search
+    private long evictions; // number of results evicted to make room for others
+
+    /**
+     * Constructs an empty cache.
+     * @param maxBytes the maximum total size of the stored results, in bytes
+     */
+    public SearchCache(long maxBytes) {
+        if (maxBytes < 0) throw new IllegalArgumentException("maxBytes must not be negative");
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the results of a complete search from a given port of a given map, carrying out the search if they are not stored.
+     * @param g the map graph
+     * @param port the number of the port (0-9)
+     * @return the distances and the shortest paths from the port to every vertex of the map
+     * @throws IllegalArgumentException if the port is not in the map, or if the {@link TerrainCosts} of the map are not uniform
+     */
+    public SingleSourcePaths paths(Graph g, int port) {
+        Key key = new Key(g, g.getModificationCount(), PortDistances.portCode(g, port));
+        synchronized (this) {
+            SingleSourcePaths stored = results.get(key);
+            if (stored != null) {
+                hits++;
+                return stored;
+            }
+            misses++;
+            remove(g, key.modifications); // the results of the graph from before its last change, if any
+        }
+
+        SingleSourcePaths computed = new SingleSourcePaths(g, key.source);
+        long size = computed.sizeInBytes();
+        if (size > maxBytes || g.getModificationCount() != key.modifications) return computed; // too large, or already stale
+        synchronized (this) {
+            SingleSourcePaths replaced = results.put(key, computed);
+            if (replaced != null) sizeInBytes -= replaced.sizeInBytes();
+            sizeInBytes += size;
+            // the iteration order is from the least to the most recently used
+            for (Iterator<Map.Entry<Key, SingleSourcePaths>> it = results.entrySet().iterator(); sizeInBytes > maxBytes && it.hasNext();) {
+                Map.Entry<Key, SingleSourcePaths> eldest = it.next();
+                if (eldest.getKey().equals(key)) continue;
+                sizeInBytes -= eldest.getValue().sizeInBytes();
+                it.remove();
+                evictions++;
+            }
+        }
+        return computed;
+    }
+
+    /**
+     * Returns the distances between the ports of a given map, answered by the results stored in this cache.
+     * @param g the map graph
+     * @return the distances between the ports of {@code g}
+     * @throws IllegalArgumentException if the {@link TerrainCosts} of the map are not uniform
+     */
+    public PortDistances distances(Graph g) {
+        if (!g.getTerrainCosts().isUniform()) throw new IllegalArgumentException("the complete searches only support uniform costs");
+        return new PortDistances() {
+            @Override
+            public int getPortsCount() { return g.getPortsCount(); }
+
+            @Override
+            public int distance(int fromPort, int toPort) {
+                int t = PortDistances.portCode(g, toPort);
+                return paths(g, fromPort).distanceTo(t);
+            }
+        };
+    }
+
+    /**
+     * Removes all the results of a given map (for example, when it is no longer held by the process).
+     * @param g the map graph
+     */
+    public synchronized void invalidate(Graph g) { remove(g, -1); }
+
+    // removes the results of a given graph, except those computed after a given number of modifications (-1 to remove all of them)
+    private void remove(Graph g, int keptModifications) {
+        for (Iterator<Map.Entry<Key, SingleSourcePaths>> it = results.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<Key, SingleSourcePaths> entry = it.next();
+            if (entry.getKey().graph == g && entry.getKey().modifications != keptModifications) {
+                sizeInBytes -= entry.getValue().sizeInBytes();
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of lookups answered by a stored result.
+     * @return the number of hits
+     */
+    public synchronized long getHits() { return hits; }
+
+    /**
+     * Returns the number of lookups that needed a search.
+     * @return the number of misses
+     */
+    public synchronized long getMisses() { return misses; }
+
+    /**
+     * Returns the number of results evicted to make room for others.
+     * @return the number of evictions
+     */
+    public synchronized long getEvictions() { return evictions; }
+
+    /**
+     * Returns the fraction of the lookups answered by a stored result.
+     * @return the hit rate, between 0 and 1 (0 if there has not been any lookup)
+     */
+    public synchronized double getHitRate() { return hits + misses == 0 ? 0 : (double) hits / (hits + misses); }
+
+    /**
+     * Returns the number of results currently stored.
+     * @return the number of stored results
+     */
+    public synchronized int size() { return results.size(); }
+
+    /**
+     * Returns the total estimated size of the results currently stored.
+     * @return the size of the stored results, in bytes
+     */
+    public synchronized long getSizeInBytes() { return sizeInBytes; }
+
+    /**
+     * Returns the maximum total size of the stored results.
+     * @return the maximum size of the stored results, in bytes
+     */
+    public long getMaxBytes() { return maxBytes; }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("SearchCache[entries=%d, bytes=%d/%d, hits=%d, misses=%d, evictions=%d]",
+                             results.size(), sizeInBytes, maxBytes, hits, misses, evictions);
+    }
+
+    /**
+     * The key of a stored result: a graph, compared by identity, the number of modifications of the graph and the code of the source
+     * vertex.
+     */
+    private static final class Key {
+        private final Graph graph; // the map graph
+        private final int modifications; // the number of modifications of the graph when the search was carried out
+        private final int source; // the code of the source vertex
+
+        Key(Graph graph, int modifications, int source) {
+            this.graph         = graph;
+            this.modifications = modifications;
+            this.source        = source;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return graph == other.graph && modifications == other.modifications && source == other.source;
+        }
+
+        @Override
+        public int hashCode() { return 31 * (31 * System.identityHashCode(graph) + modifications) + source; }
+    }
+}
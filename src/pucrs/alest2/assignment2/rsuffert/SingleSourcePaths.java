@@ -0,0 +1,132 @@
+package pucrs.alest2.assignment2.rsuffert;
+
+import java.util.Arrays;
+
+/**
+ * The {@link SingleSourcePaths} class holds the result of a complete breadth-first search from a reference vertex: the distance to every
+ * vertex and the tree of the shortest paths. The results are kept in compact primitive arrays, so they can be stored (for example, by a
+ * {@link SearchCache}) and queried later: the distance of each vertex is an {@code int}, and, since the graph is a grid, the vertex that
+ * led to each vertex is stored as the direction it came from, in a single byte. Since the distances count moves, the search is only
+ * carried out in graphs with uniform {@link TerrainCosts}. Instances are immutable and may be shared between threads.
+ * @author Ricardo Süffert
+ */
+public class SingleSourcePaths {
+    private static final byte FROM_NORTH = 1, FROM_SOUTH = 2, FROM_WEST = 3, FROM_EAST = 4; // directions of the parents (0 for none)
+
+    private final int source; // the reference vertex
+    private final int columns; // number of columns in the map, needed to follow the parent directions
+    private final int[] distTo; // stores the distance from the reference vertex to the vertex represented by the index in the array (-1 if unreachable)
+    private final byte[] edgeFrom; // stores the direction of the vertex that led to the vertex represented by the index in the array
+
+    /**
+     * Carries out a complete breadth-first search from a given reference vertex.
+     * @param g the base graph
+     * @param s the reference vertex
+     * @throws IllegalArgumentException if the {@link TerrainCosts} of the graph are not uniform
+     */
+    public SingleSourcePaths(Graph g, int s) {
+        if (!g.getTerrainCosts().isUniform()) throw new IllegalArgumentException("the complete searches only support uniform costs");
+        this.source   = s;
+        this.columns  = g.getColumns();
+        this.distTo   = new int[g.getVertexCount()];
+        this.edgeFrom = new byte[g.getVertexCount()];
+        Arrays.fill(distTo, PointToPointSearch.UNREACHABLE);
+
+        int[] queue    = new int[g.getVertexCount()];
+        int[] adjacent = new int[4];
+        int head = 0, tail = 0;
+        queue[tail++] = s;
+        distTo[s] = 0;
+        while (head < tail) {
+            int v = queue[head++];
+            int adjacentCount = g.neighbours(v, adjacent);
+            for (int i=0; i<adjacentCount; i++) {
+                int w = adjacent[i];
+                if (distTo[w] == PointToPointSearch.UNREACHABLE) {
+                    distTo[w] = distTo[v] + 1;
+                    edgeFrom[w] = directionFrom(v, w);
+                    queue[tail++] = w;
+                }
+            }
+        }
+    }
+
+    // returns the direction in which vertex v lies when seen from its adjacent vertex w
+    private byte directionFrom(int v, int w) {
+        if (v == w - columns) return FROM_NORTH;
+        if (v == w + columns) return FROM_SOUTH;
+        if (v == w - 1)       return FROM_WEST;
+        return FROM_EAST;
+    }
+
+    // returns the vertex that led to a given vertex, or -1 for the reference vertex
+    private int parentOf(int v) {
+        switch (edgeFrom[v]) {
+            case FROM_NORTH: return v - columns;
+            case FROM_SOUTH: return v + columns;
+            case FROM_WEST:  return v - 1;
+            case FROM_EAST:  return v + 1;
+            default:         return -1;
+        }
+    }
+
+    /**
+     * Returns the reference vertex of the search.
+     * @return the reference vertex
+     */
+    public int getSource() { return source; }
+
+    /**
+     * Returns whether or not a given vertex has a path to the reference vertex.
+     * @param v the vertex to be found out whether or not it has a path to the reference vertex
+     * @return {@code true} if there is a path leading from {@code v} to the reference vertex; {@code false} if not
+     */
+    public boolean hasPathTo(int v) { return distTo[v] != PointToPointSearch.UNREACHABLE; }
+
+    /**
+     * Returns how many vertices apart a given vertex is from the reference vertex.
+     * @param v the vertex from which it is wished to find out the distance to the reference vertex
+     * @return the distance from {@code v} to the reference vertex, or {@link PointToPointSearch#UNREACHABLE} if there isn't a path
+     *         from {@code v} to the reference vertex
+     */
+    public int distanceTo(int v) { return distTo[v]; }
+
+    /**
+     * Returns the path from a given vertex to the reference vertex.
+     * @param v the vertex from which it is wished to find out the path to the reference vertex
+     * @return the path from {@code v} to the reference vertex as an {@code Iterable}, or {@code null} if there isn't a path
+     */
+    public Iterable<Integer> pathTo(int v) {
+        if (!hasPathTo(v)) return null;
+
+        Bag<Integer> path = new Bag<>();
+        for (int x = v; x != -1; x = parentOf(x)) path.add(x);
+        return path;
+    }
+
+    /**
+     * Writes the path from the reference vertex to a given vertex into a given buffer, without allocating any memory.
+     * @param v the last vertex of the path
+     * @param out the buffer that receives the vertices of the path, from the reference vertex to {@code v}
+     * @param offset the index of the buffer that receives the reference vertex; the buffer must have room for {@code distanceTo(v)+1}
+     *               vertices from it
+     * @return the number of vertices written (the distance to {@code v} plus one), or {@link PointToPointSearch#UNREACHABLE} if there
+     *         isn't a path
+     * @throws ArrayIndexOutOfBoundsException if the buffer is too small for the path
+     */
+    public int pathTo(int v, int[] out, int offset) {
+        if (!hasPathTo(v)) return PointToPointSearch.UNREACHABLE;
+
+        int length = distTo[v] + 1;
+        for (int x = v, i = offset+length-1; x != -1; x = parentOf(x), i--) out[i] = x; // from v back to the reference vertex
+        return length;
+    }
+
+    /**
+     * Returns an estimate of the memory held by this instance.
+     * @return the approximate size of this instance, in bytes
+     */
+    public long sizeInBytes() {
+        return 64 + 4L*distTo.length + edgeFrom.length; // the object and array headers, and the arrays
+    }
+}
@@ -0,0 +1,155 @@
+package pucrs.alest2.assignment2.rsuffert;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The {@link SpillableLongList} class is a list of {@code long}s that only grows at its end and is read sequentially, keeping its first
+ * elements in an array of fixed capacity and spilling the rest to a temporary file. Several readers may go through the list at the same
+ * time, each with its own small buffer, which it keeps when it moves on to another list, and the list may be cleared and filled again,
+ * reusing both the array and the file. An instance is not thread-safe.
+ * @author Ricardo Süffert
+ */
+class SpillableLongList implements Closeable {
+    private final long[] head; // the first elements of the list
+    private final Path directory; // where the file of the spilled elements is created
+    private final ByteBuffer writeBuffer; // elements to be written to the file
+    private Path spillPath; // the file of the spilled elements, or null if none has been spilled yet
+    private FileChannel spill; // the channel of the file of the spilled elements
+    private long size; // number of elements in the list
+
+    /**
+     * Constructs an empty list.
+     * @param capacity the number of elements kept in memory
+     * @param bufferSize the number of elements written to the file at once
+     * @param directory where the file of the elements that do not fit in memory is created
+     */
+    SpillableLongList(int capacity, int bufferSize, Path directory) {
+        this.head        = new long[capacity];
+        this.writeBuffer = ByteBuffer.allocate(bufferSize * Long.BYTES);
+        this.directory   = directory;
+    }
+
+    /**
+     * Appends an element to the end of the list.
+     * @param value the element
+     */
+    void add(long value) {
+        if (size < head.length) head[(int) size] = value;
+        else {
+            if (!writeBuffer.hasRemaining()) flush();
+            writeBuffer.putLong(value);
+        }
+        size++;
+    }
+
+    /**
+     * Returns the number of elements in the list.
+     * @return the number of elements in the list
+     */
+    long size() { return size; }
+
+    /**
+     * Removes all the elements of the list.
+     */
+    void clear() {
+        size = 0;
+        writeBuffer.clear();
+        try {
+            if (spill != null) spill.truncate(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // writes the buffered elements to the end of the file, creating it if needed
+    private void flush() {
+        try {
+            if (spill == null) {
+                spillPath = Files.createTempFile(directory, "frontier", ".tmp");
+                spill = FileChannel.open(spillPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            }
+            writeBuffer.flip();
+            long position = (size - head.length) * Long.BYTES - writeBuffer.remaining();
+            while (writeBuffer.hasRemaining()) position += spill.write(writeBuffer, position);
+            writeBuffer.clear();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Closes and deletes the file of the spilled elements.
+     * @throws IOException if the file could not be deleted
+     */
+    @Override
+    public void close() throws IOException {
+        if (spill == null) return;
+        spill.close();
+        Files.deleteIfExists(spillPath);
+    }
+
+    /**
+     * A sequential reader of a list. A reader may be moved to the beginning of any list with {@link #reset(SpillableLongList)}, so that
+     * the searches that go through a new list at each step reuse the buffers of their readers.
+     */
+    static class Reader {
+        private final ByteBuffer readBuffer; // elements read from the file
+        private SpillableLongList list; // the list being read
+        private long index; // index of the next element
+
+        /**
+         * Constructs a reader, which must be positioned at the beginning of a list with {@link #reset(SpillableLongList)} before it is
+         * used.
+         * @param bufferSize the number of elements read from the file at once
+         */
+        Reader(int bufferSize) { this.readBuffer = ByteBuffer.allocate(bufferSize * Long.BYTES); }
+
+        /**
+         * Positions the reader at the first element of a given list, discarding the elements buffered from the previous one. The list
+         * must not be changed while it is being read.
+         * @param list the list to be read
+         */
+        void reset(SpillableLongList list) {
+            if (list.writeBuffer.position() > 0) list.flush();
+            this.list  = list;
+            this.index = 0;
+            readBuffer.clear().flip(); // nothing has been read from the file
+        }
+
+        /**
+         * Returns whether or not there are elements left to be read.
+         * @return {@code true} if {@link #next()} can be called
+         */
+        boolean hasNext() { return index < list.size; }
+
+        /**
+         * Returns the next element of the list.
+         * @return the next element
+         */
+        long next() {
+            long[] head = list.head;
+            if (index < head.length) return head[(int) index++];
+            if (!readBuffer.hasRemaining()) {
+                readBuffer.clear();
+                long position = (index - head.length) * Long.BYTES;
+                int limit = (int) Math.min(readBuffer.capacity(), (list.size - index) * Long.BYTES);
+                readBuffer.limit(limit);
+                try {
+                    while (readBuffer.hasRemaining() && list.spill.read(readBuffer, position + readBuffer.position()) >= 0);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                readBuffer.flip();
+            }
+            index++;
+            return readBuffer.getLong();
+        }
+    }
+}
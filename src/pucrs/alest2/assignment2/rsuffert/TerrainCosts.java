@@ -0,0 +1,113 @@
+package pucrs.alest2.assignment2.rsuffert;
+
+import java.util.Arrays;
+
+/**
+ * The {@link TerrainCosts} class holds how much fuel it takes to move into each kind of cell of a map: moving from a vertex to one of its
+ * neighbours costs the cost of the character of the neighbour. Every navigable character costs 1 unless told otherwise, which is the
+ * original fuel model (each move consumes one unit of fuel); other characters than {@code .} and the digits, such as {@code ~} for
+ * currents or {@code :} for shallows, may be given higher costs, or 0. Since a move costs the cell it enters, the cost of a path is not
+ * always the same as the cost of the path back. Instances are immutable.
+ * @author Ricardo Süffert
+ */
+public final class TerrainCosts {
+    /**
+     * The highest cost a character may have. The costs are kept small so that the searches can use a bucket queue (see
+     * {@link DialSearchEngine}).
+     */
+    public static final int MAX_COST = 255;
+
+    /**
+     * The costs of the original fuel model: every navigable character costs 1.
+     */
+    public static final TerrainCosts UNIFORM = new TerrainCosts(uniformTable());
+
+    private final int[] costs; // costs[c] is the cost of moving into a cell of character c (unsigned)
+    private final int maxCost; // highest cost of a navigable character
+    private final boolean uniform; // whether or not every navigable character costs 1
+
+    private TerrainCosts(int[] costs) {
+        this.costs = costs;
+        int max = 0;
+        boolean allOnes = true;
+        for (int c=0; c<costs.length; c++) {
+            if (c == Graph.OBSTACLE) continue;
+            max = Math.max(max, costs[c]);
+            allOnes &= costs[c] == 1;
+        }
+        this.maxCost = max;
+        this.uniform = allOnes;
+    }
+
+    // returns a table in which every character costs 1
+    private static int[] uniformTable() {
+        int[] table = new int[256];
+        Arrays.fill(table, 1);
+        return table;
+    }
+
+    /**
+     * Parses a list of costs, such as {@code "~=3,:=2"}: each item is a character, an equals sign and the cost of the character (from 0
+     * to {@link #MAX_COST}), and the items are separated by commas. The characters left out cost 1.
+     * @param spec the list of costs; an empty list (or {@code null}) means {@link #UNIFORM}
+     * @return the costs
+     * @throws IllegalArgumentException if an item is malformed, gives a cost to the obstacle or to a character outside of ASCII, or gives
+     *                                  a cost out of range
+     */
+    public static TerrainCosts parse(String spec) {
+        if (spec == null || spec.trim().isEmpty()) return UNIFORM;
+        int[] table = uniformTable();
+        for (String item : spec.split(",")) {
+            if (item.length() < 3 || item.charAt(1) != '=')
+                throw new IllegalArgumentException("Custo inválido (use caractere=custo): " + item);
+            char c = item.charAt(0);
+            if (c == Graph.OBSTACLE) throw new IllegalArgumentException("O obstáculo (" + Graph.OBSTACLE + ") não pode ser navegado");
+            if (c <= ' ' || c > '~') throw new IllegalArgumentException("Caractere inválido: " + item);
+            int cost;
+            try {
+                cost = Integer.parseInt(item.substring(2).trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Custo inválido (use caractere=custo): " + item);
+            }
+            if (cost < 0 || cost > MAX_COST)
+                throw new IllegalArgumentException(String.format("O custo de %c deve estar entre 0 e %d", c, MAX_COST));
+            table[c] = cost;
+        }
+        return new TerrainCosts(table);
+    }
+
+    /**
+     * Returns the cost of moving into a cell.
+     * @param cell the character of the cell, as stored by the {@link Graph}
+     * @return the cost of moving into the cell
+     */
+    public int of(byte cell) { return costs[cell & 0xFF]; }
+
+    /**
+     * Returns the highest cost of a navigable character.
+     * @return the highest cost
+     */
+    public int getMaxCost() { return maxCost; }
+
+    /**
+     * Returns whether or not these are the costs of the original fuel model, in which every move costs 1, so that the cost of a path is
+     * the number of its moves.
+     * @return {@code true} if every navigable character costs 1
+     */
+    public boolean isUniform() { return uniform; }
+
+    /**
+     * Returns the characters that do not cost 1, in the format read by {@link #parse(String)}.
+     * @return the list of costs, or an empty string if the costs are uniform
+     */
+    @Override
+    public String toString() {
+        StringBuilder s = new StringBuilder();
+        for (int c=0; c<costs.length; c++) {
+            if (c == Graph.OBSTACLE || costs[c] == 1) continue;
+            if (s.length() > 0) s.append(',');
+            s.append((char) c).append('=').append(costs[c]);
+        }
+        return s.toString();
+    }
+}
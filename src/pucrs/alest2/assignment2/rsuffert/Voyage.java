@@ -0,0 +1,187 @@
+package pucrs.alest2.assignment2.rsuffert;
+
+import java.security.InvalidAlgorithmParameterException;
+import java.util.Arrays;
+
+/**
+ * The {@link Voyage} class represents the solution to the Phoenician problem for a single map: the voyage from the first port to the last
+ * one, visiting, in order, all the ports that are accessible, followed by the direct return to the first port. Each instance holds the
+ * result for its own map, so several maps may be solved at the same time.
+ * @author Ricardo Süffert
+ */
+public class Voyage {
+    private final int firstToLastDistance; // distance from the first to the last port, visiting all the accessible ports
+    private final int lastToFirstDistance; // distance from the last port visited directly to the first port
+    private int lastPortVisited; // the last port visited on the way from the first port
+    private int[] inaccessiblePorts = new int[0]; // the ports that could not be visited
+
+    /**
+     * Solves the problem for a given map graph, taking the distances between its ports from {@link Graph#getPortDistances()}.
+     * @param mapGraph the map graph
+     * @throws InvalidAlgorithmParameterException if the map does not have any ports, if there is no reachable port leaving from the
+     *                                            first port, or if there is no valid path from the last port to the first one
+     */
+    public Voyage(Graph mapGraph) throws InvalidAlgorithmParameterException { this(mapGraph, Instrumentation.DISABLED); }
+
+    /**
+     * Solves the problem for a given map graph like {@link #Voyage(Graph)}, recording the phases, the searches and the legs.
+     * @param mapGraph the map graph
+     * @param metrics where the metrics of the solution are recorded
+     * @throws InvalidAlgorithmParameterException if the map does not have any ports, if there is no reachable port leaving from the
+     *                                            first port, or if there is no valid path from the last port to the first one
+     */
+    public Voyage(Graph mapGraph, Instrumentation metrics) throws InvalidAlgorithmParameterException {
+        this(mapGraph.getPortDistances(metrics), metrics);
+    }
+
+    /**
+     * Solves the problem for a map, taking the distance of each leg from a given source of port distances (for example, one built with
+     * {@link PortDistances#of(Graph, PointToPointSearch)} to choose the search algorithm).
+     * @param distances the distances between the ports of the map
+     * @throws InvalidAlgorithmParameterException if the map does not have any ports, if there is no reachable port leaving from the
+     *                                            first port, or if there is no valid path from the last port to the first one
+     */
+    public Voyage(PortDistances distances) throws InvalidAlgorithmParameterException { this(distances, Instrumentation.DISABLED); }
+
+    /**
+     * Solves the problem for a map like {@link #Voyage(PortDistances)}, recording each leg and the duration of the whole voyage as the
+     * {@code voyage} phase.
+     * @param distances the distances between the ports of the map
+     * @param metrics where the legs and the phase are recorded
+     * @throws InvalidAlgorithmParameterException if the map does not have any ports, if there is no reachable port leaving from the
+     *                                            first port, or if there is no valid path from the last port to the first one
+     */
+    public Voyage(PortDistances distances, Instrumentation metrics) throws InvalidAlgorithmParameterException {
+        long start = metrics.start();
+        this.firstToLastDistance = travelToLastPort(distances, metrics);
+        this.lastToFirstDistance = returnToFirstPort(distances, metrics);
+        metrics.stop("voyage", start);
+    }
+
+    /**
+     * Returns the distance from the first to the last port in the map, visiting, in order, all ports that are accessible. This method
+     * also stores the last port visited and the ports that could not be accessed.
+     * @param distances the distances between the ports of the map
+     * @param metrics where the legs are recorded
+     * @throws InvalidAlgorithmParameterException if the map does not have any ports, or if there is no reachable port leaving from
+     *                                            the first port
+     * @return the distance from the first port to the last port in the map, visiting all accessible ports (for maps that have only
+     *         one port, the distance is zero)
+     */
+    private int travelToLastPort(PortDistances distances, Instrumentation metrics) throws InvalidAlgorithmParameterException {
+        if (distances.getPortsCount() == 0) throw new InvalidAlgorithmParameterException("O mapa não possui nenhum porto");
+        else if (distances.getPortsCount() == 1) return 0; // no port is visited, so the last port visited stays 0
+
+        int[] inaccessible = new int[distances.getPortsCount()];
+        int inaccessibleCount = 0;
+        int distance = 0;
+        boolean moved = false; // with terrain costs, a leg may cost nothing, so the distance does not tell whether any port was reached
+
+        int originPortIdx      = 1;
+        int destinationPortIdx = 2;
+        while (destinationPortIdx <= distances.getPortsCount()) { // while we haven't got to the last port yet
+            long start = metrics.start();
+            int legDistance = distances.distance(originPortIdx, destinationPortIdx);
+            metrics.recordLeg(originPortIdx, destinationPortIdx, legDistance, start);
+            if (legDistance != PortDistances.UNREACHABLE) { // if there's a path to the destination
+                // "visit it", i.e.:
+                distance += legDistance;
+                moved = true;
+                originPortIdx = destinationPortIdx; // only visit the destination if there's a valid path
+            }
+            else inaccessible[inaccessibleCount++] = destinationPortIdx; // add this port as inaccessible
+            destinationPortIdx++; // go on to the next port
+        }
+
+        lastPortVisited = originPortIdx;
+
+        // if, after checking all ports, no movement has been done, that means there are no reachable ports
+        if (!moved) throw new InvalidAlgorithmParameterException("Não há nenhum porto alcançável partindo do primeiro");
+
+        inaccessiblePorts = Arrays.copyOf(inaccessible, inaccessibleCount);
+        return distance;
+    }
+
+    /**
+     * Returns the distance from the last port visited directly to the first port in the map, without making any stops.
+     * @param distances the distances between the ports of the map
+     * @param metrics where the leg is recorded
+     * @throws InvalidAlgorithmParameterException if there is no valid path from the last port to the first one
+     * @return the direct distance from the last port to the first port in the map (for maps that have only one port, the distance is
+     *         zero)
+     */
+    private int returnToFirstPort(PortDistances distances, Instrumentation metrics) throws InvalidAlgorithmParameterException {
+        if (distances.getPortsCount() == 1) return 0;
+
+        int firstPortIdx = 1;
+        int lastPortIdx  = lastPortVisited;
+
+        long start = metrics.start();
+        int distance = distances.distance(lastPortIdx, firstPortIdx);
+        metrics.recordLeg(lastPortIdx, firstPortIdx, distance, start);
+        if (distance == PortDistances.UNREACHABLE) throw new InvalidAlgorithmParameterException("Não há um caminho do último porto ao primeiro");
+        return distance;
+    }
+
+    /**
+     * Returns the distance from the first to the last port visited, visiting, in order, all ports that are accessible.
+     * @return the distance from the first to the last port visited
+     */
+    public int getFirstToLastDistance() { return firstToLastDistance; }
+
+    /**
+     * Returns the distance from the last port visited directly to the first port.
+     * @return the distance from the last port visited to the first port
+     */
+    public int getLastToFirstDistance() { return lastToFirstDistance; }
+
+    /**
+     * Returns the total fuel necessary for the voyage, which is the total cost of the voyage under the {@link TerrainCosts} of the graph
+     * (with uniform costs, each movement consumes 1 unit of fuel, so it is the total distance travelled).
+     * @return the fuel necessary to travel to the last port and return
+     */
+    public int getFuel() { return firstToLastDistance + lastToFirstDistance; }
+
+    /**
+     * Returns the last port visited on the way from the first port.
+     * @return the number of the last port visited, or 0 if the map has only one port (the voyage does not leave it)
+     */
+    public int getLastPortVisited() { return lastPortVisited; }
+
+    /**
+     * Returns the ports in the order they are visited: the first port, each accessible port up to the last one visited and, if the voyage
+     * left the first port, the first port again, at the end of the return.
+     * @return the numbers of the ports of the voyage, in order
+     */
+    public int[] getItinerary() {
+        int[] itinerary = new int[Math.max(lastPortVisited, 1) + 1];
+        int count = 0, skipped = 0;
+        itinerary[count++] = 1;
+        for (int port=2; port<=lastPortVisited; port++) {
+            if (skipped < inaccessiblePorts.length && inaccessiblePorts[skipped] == port) skipped++;
+            else itinerary[count++] = port;
+        }
+        if (lastPortVisited > 1) itinerary[count++] = 1;
+        return Arrays.copyOf(itinerary, count);
+    }
+
+    /**
+     * Returns the ports that could not be accessed, in increasing order.
+     * @return the numbers of the inaccessible ports (an empty array if all ports are accessible)
+     */
+    public int[] getInaccessiblePorts() { return inaccessiblePorts.clone(); }
+
+    /**
+     * Returns the ports that could not be accessed, separated by commas.
+     * @return the numbers of the inaccessible ports separated by commas, or {@code null} if all ports are accessible
+     */
+    public String describeInaccessiblePorts() {
+        if (inaccessiblePorts.length == 0) return null;
+        StringBuilder sb = new StringBuilder();
+        for (int i=0; i<inaccessiblePorts.length; i++) {
+            if (i < inaccessiblePorts.length-1) sb.append(inaccessiblePorts[i] + ", ");
+            else                                sb.append(inaccessiblePorts[i]);
+        }
+        return sb.toString();
+    }
+}